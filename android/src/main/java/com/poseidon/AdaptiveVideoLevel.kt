@@ -0,0 +1,78 @@
+package com.poseidon
+
+import android.os.SystemClock
+
+/**
+ * Decides when to act on the SDK's MSG_VIDEO_LEVEL_AUTO_IMPROVE / MSG_VIDEO_LEVEL_AUTO_REDUCE
+ * suggestions. The detector fires on every short network swing, so a step is only taken after
+ * several suggestions in a row in the same direction, never sooner than [MIN_SWITCH_INTERVAL_MS]
+ * after the previous step, and stepping back up after a reduction waits [IMPROVE_HOLD_MS] so a
+ * marginal link does not oscillate between two levels. Player thread only.
+ */
+class AdaptiveVideoLevel {
+
+  // EZVideoLevel values: 0 fluent, 1 balanced, 2 HD. Super clear is left out as few devices
+  // offer it and the SDK rejects levels a device does not support.
+  var level = LEVEL_BALANCED
+    private set
+
+  private var improveCount = 0
+  private var reduceCount = 0
+  private var lastSwitchAt = 0L
+  private var lastReduceAt = 0L
+  private var isSwitching = false
+
+  fun reset(startLevel: Int) {
+    level = startLevel.coerceIn(LEVEL_FLUENT, LEVEL_HD)
+    improveCount = 0
+    reduceCount = 0
+    lastSwitchAt = 0L
+    lastReduceAt = 0L
+    isSwitching = false
+  }
+
+  // Both return the level to switch to, or null while the suggestion is not yet trusted.
+  fun onImproveSuggested(): Int? {
+    reduceCount = 0
+    improveCount++
+    val now = SystemClock.elapsedRealtime()
+    if (isSwitching || level >= LEVEL_HD || improveCount < IMPROVE_CONFIRMATIONS) return null
+    if (now - lastSwitchAt < MIN_SWITCH_INTERVAL_MS || now - lastReduceAt < IMPROVE_HOLD_MS) return null
+    return begin(level + 1, now)
+  }
+
+  fun onReduceSuggested(): Int? {
+    improveCount = 0
+    reduceCount++
+    val now = SystemClock.elapsedRealtime()
+    if (isSwitching || level <= LEVEL_FLUENT || reduceCount < REDUCE_CONFIRMATIONS) return null
+    if (now - lastSwitchAt < MIN_SWITCH_INTERVAL_MS) return null
+    lastReduceAt = now
+    return begin(level - 1, now)
+  }
+
+  fun onSwitchFinished(newLevel: Int, success: Boolean) {
+    isSwitching = false
+    if (success) {
+      level = newLevel
+    }
+  }
+
+  private fun begin(newLevel: Int, now: Long): Int {
+    isSwitching = true
+    improveCount = 0
+    reduceCount = 0
+    lastSwitchAt = now
+    return newLevel
+  }
+
+  companion object {
+    const val LEVEL_FLUENT = 0
+    const val LEVEL_BALANCED = 1
+    const val LEVEL_HD = 2
+    private const val IMPROVE_CONFIRMATIONS = 3
+    private const val REDUCE_CONFIRMATIONS = 2
+    private const val MIN_SWITCH_INTERVAL_MS = 10_000L
+    private const val IMPROVE_HOLD_MS = 30_000L
+  }
+}
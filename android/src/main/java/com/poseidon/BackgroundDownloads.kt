@@ -0,0 +1,196 @@
+package com.poseidon
+
+import android.content.Context
+import android.os.Environment
+import android.os.SystemClock
+import android.util.Log
+import com.videogo.openapi.bean.EZDeviceRecordFile
+import java.io.File
+import java.util.Calendar
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArraySet
+
+/**
+ * Module-level owner of record downloads. Jobs run in [DownloadManager] under a foreground
+ * [DownloadService], are written to a [DownloadJobStore] so they survive process death, and report
+ * to two kinds of listener: the view that started a job (while it is attached) and every module
+ * instance that is observing events. A job that finishes while no module is observing keeps its
+ * outcome in the table and is delivered to the next observer instead of being lost.
+ */
+object BackgroundDownloads : DownloadManager.Listener {
+
+  interface Observer {
+    fun onProgress(event: Map<String, Any?>)
+    fun onComplete(event: Map<String, Any?>)
+  }
+
+  private const val NOTIFICATION_INTERVAL_MS = 1_000L
+
+  private val observers = CopyOnWriteArraySet<Observer>()
+  private val jobListeners = ConcurrentHashMap<String, DownloadManager.Listener>()
+
+  @Volatile
+  private var appContext: Context? = null
+  private val store by lazy { DownloadJobStore(File(requireContext().filesDir, "ezviz-downloads.json")) }
+
+  @Volatile
+  private var lastNotifiedAt = 0L
+
+  fun outputDirectory(context: Context): File? {
+    val dir = context.getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS)
+    return if (dir != null && (dir.exists() || dir.mkdirs())) dir else null
+  }
+
+  fun recordFile(startTime: Long, stopTime: Long): EZDeviceRecordFile {
+    return EZDeviceRecordFile().apply {
+      this.startTime = Calendar.getInstance().apply { timeInMillis = startTime }
+      this.stopTime = Calendar.getInstance().apply { timeInMillis = stopTime }
+    }
+  }
+
+  // Persists and queues a download. listener, if given, also receives the job's callbacks until
+  // it is detached.
+  fun start(context: Context, request: DownloadManager.Request, listener: DownloadManager.Listener?): String {
+    appContext = context.applicationContext
+    val id = UUID.randomUUID().toString()
+    store.put(DownloadJobStore.Entry(
+      id = id,
+      deviceSerial = request.deviceSerial,
+      cameraNo = request.cameraNo,
+      verifyCode = request.verifyCode,
+      startTime = request.recordFile.startTime?.timeInMillis ?: 0L,
+      stopTime = request.recordFile.stopTime?.timeInMillis ?: 0L,
+      outputDirectory = request.outputDirectory.absolutePath,
+      saveToGallery = request.saveToGallery,
+      segments = request.segments
+    ))
+    listener?.let { jobListeners[id] = it }
+    DownloadManager.enqueue(context, request, this, id)
+    updateService(force = true)
+    return id
+  }
+
+  fun cancel(jobId: String): Boolean = DownloadManager.cancel(jobId)
+
+  fun detachListener(jobId: String) {
+    jobListeners.remove(jobId)
+  }
+
+  // Restarts jobs that were active when the previous process died. The SDK cannot continue a
+  // device download from an offset, so each one starts over and its partial files are dropped.
+  fun resume(context: Context): Int {
+    appContext = context.applicationContext
+    var resumed = 0
+    store.all()
+      .filter { it.status == DownloadJobStore.STATUS_ACTIVE && DownloadManager.job(it.id) == null }
+      .forEach { entry ->
+        val directory = File(entry.outputDirectory)
+        directory.listFiles()?.filter { it.name.contains(entry.id) }?.forEach { it.delete() }
+        val request = DownloadManager.Request(
+          entry.deviceSerial, entry.cameraNo, entry.verifyCode,
+          recordFile(entry.startTime, entry.stopTime), directory, entry.saveToGallery, entry.segments
+        )
+        Log.d("BackgroundDownloads", "Restarting interrupted download ${entry.id}")
+        DownloadManager.enqueue(context, request, this, entry.id)
+        resumed++
+      }
+    if (resumed > 0) updateService(force = true)
+    return resumed
+  }
+
+  // Every job in the table: active ones with their live stage and progress, plus finished ones
+  // whose outcome has not been delivered yet.
+  fun list(context: Context): List<Map<String, Any?>> {
+    appContext = context.applicationContext
+    return store.all().map { entry ->
+      val job = DownloadManager.job(entry.id)
+      val status = if (entry.status == DownloadJobStore.STATUS_ACTIVE && job == null) "interrupted" else entry.status
+      entry.toMap() + mapOf(
+        "status" to status,
+        "stage" to job?.stage?.name?.lowercase(),
+        "progress" to job?.progress,
+        "bytesWritten" to job?.bytesWritten?.toDouble()
+      )
+    }
+  }
+
+  fun addObserver(context: Context, observer: Observer) {
+    appContext = context.applicationContext
+    observers.add(observer)
+    store.all()
+      .filter { it.status != DownloadJobStore.STATUS_ACTIVE }
+      .forEach { deliver(it.id) }
+  }
+
+  fun removeObserver(observer: Observer) {
+    observers.remove(observer)
+  }
+
+  override fun onProgress(job: DownloadManager.Job) {
+    jobListeners[job.id]?.onProgress(job)
+    if (observers.isNotEmpty()) {
+      val event = mapOf(
+        "jobId" to job.id,
+        "stage" to job.stage.name.lowercase(),
+        "progress" to job.progress,
+        "bytesWritten" to job.bytesWritten.toDouble()
+      )
+      observers.forEach { it.onProgress(event) }
+    }
+    updateService(force = false)
+  }
+
+  override fun onSuccess(job: DownloadManager.Job, path: String, savedToAlbum: Boolean) {
+    store.update(job.id) {
+      it.status = DownloadJobStore.STATUS_SUCCEEDED
+      it.path = path
+      it.savedToAlbum = savedToAlbum
+      job.published?.let { published ->
+        it.publishedBytes = published.bytes
+        it.publishMs = published.elapsedMs
+        it.throughputMBps = published.throughputMBps
+      }
+    }
+    jobListeners.remove(job.id)?.onSuccess(job, path, savedToAlbum)
+    deliver(job.id)
+    updateService(force = true)
+  }
+
+  override fun onError(job: DownloadManager.Job, code: String, message: String, path: String?) {
+    store.update(job.id) {
+      it.status = DownloadJobStore.STATUS_FAILED
+      it.path = path
+      it.errorCode = code
+      it.error = message
+    }
+    jobListeners.remove(job.id)?.onError(job, code, message, path)
+    deliver(job.id)
+    updateService(force = true)
+  }
+
+  // Synchronized so a replay on subscribe and a job finishing at the same time deliver once.
+  @Synchronized
+  private fun deliver(jobId: String) {
+    if (observers.isEmpty()) return
+    val entry = store.get(jobId) ?: return
+    observers.forEach { it.onComplete(entry.toMap()) }
+    store.remove(jobId)
+  }
+
+  private fun updateService(force: Boolean) {
+    val context = appContext ?: return
+    val now = SystemClock.elapsedRealtime()
+    if (!force && now - lastNotifiedAt < NOTIFICATION_INTERVAL_MS) return
+    lastNotifiedAt = now
+    val active = store.all().filter { it.status == DownloadJobStore.STATUS_ACTIVE }
+    val jobs = active.mapNotNull { DownloadManager.job(it.id) }
+    // A single running job shows its stage progress; several show an indeterminate bar.
+    val percent = if (jobs.size == 1) (jobs[0].progress * 100).toInt() else -1
+    DownloadService.update(context, jobs.size, percent)
+  }
+
+  private fun requireContext(): Context {
+    return appContext ?: throw IllegalStateException("BackgroundDownloads used before a context was provided.")
+  }
+}
@@ -0,0 +1,55 @@
+package com.poseidon
+
+import android.os.SystemClock
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * In-memory getDeviceInfo cache. Entries older than [ttlMs] are still served but flagged stale so
+ * the caller can refresh them in the background.
+ *
+ * Each serial carries a generation that [invalidate] bumps. A fetch records the generation it
+ * started under and [put] drops the result if the device was mutated in the meantime, so a
+ * refresh racing setDeviceName or setDefence cannot write the old values back.
+ */
+class DeviceInfoCache(@Volatile var ttlMs: Long = DEFAULT_TTL_MS) {
+
+  class Lookup(val deviceInfo: ExpoDeviceInfo, val isStale: Boolean)
+
+  private class Entry(val deviceInfo: ExpoDeviceInfo, val fetchedAt: Long)
+
+  private val entries = ConcurrentHashMap<String, Entry>()
+  private val generations = ConcurrentHashMap<String, Long>()
+
+  fun get(deviceSerial: String): Lookup? {
+    if (ttlMs <= 0) return null
+    val entry = entries[deviceSerial] ?: return null
+    return Lookup(entry.deviceInfo, SystemClock.elapsedRealtime() - entry.fetchedAt > ttlMs)
+  }
+
+  fun generation(deviceSerial: String): Long = generations[deviceSerial] ?: 0L
+
+  fun put(deviceSerial: String, deviceInfo: ExpoDeviceInfo, generation: Long) {
+    if (ttlMs <= 0) return
+    synchronized(this) {
+      if (generation(deviceSerial) != generation) return
+      entries[deviceSerial] = Entry(deviceInfo, SystemClock.elapsedRealtime())
+    }
+  }
+
+  fun invalidate(deviceSerial: String) {
+    synchronized(this) {
+      generations[deviceSerial] = generation(deviceSerial) + 1
+      entries.remove(deviceSerial)
+    }
+  }
+
+  fun clear() {
+    synchronized(this) {
+      (entries.keys + generations.keys).forEach { invalidate(it) }
+    }
+  }
+
+  companion object {
+    const val DEFAULT_TTL_MS = 60_000L
+  }
+}
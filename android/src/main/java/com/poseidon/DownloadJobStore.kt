@@ -0,0 +1,165 @@
+package com.poseidon
+
+import android.util.Log
+import org.json.JSONArray
+import org.json.JSONObject
+import java.io.File
+
+/**
+ * Small persisted table of background downloads, one JSON file in the app's private files
+ * directory. It holds what is needed to restart a job after process death and the outcome of
+ * finished jobs until a JS listener has received it. Rewritten in full (temp file + rename) on
+ * every change; the table only ever holds a handful of rows.
+ */
+class DownloadJobStore(private val file: File) {
+
+  class Entry(
+    val id: String,
+    val deviceSerial: String,
+    val cameraNo: Int,
+    val verifyCode: String,
+    val startTime: Long,
+    val stopTime: Long,
+    val outputDirectory: String,
+    val saveToGallery: Boolean,
+    val segments: Int = 1,
+    var status: String = STATUS_ACTIVE,
+    var path: String? = null,
+    var savedToAlbum: Boolean = false,
+    var errorCode: String? = null,
+    var error: String? = null,
+    var publishedBytes: Long? = null,
+    var publishMs: Double? = null,
+    var throughputMBps: Double? = null
+  ) {
+    fun toMap(): Map<String, Any?> = mapOf(
+      "jobId" to id,
+      "deviceSerial" to deviceSerial,
+      "cameraNo" to cameraNo,
+      "startTime" to startTime.toDouble(),
+      "stopTime" to stopTime.toDouble(),
+      "segments" to segments,
+      "status" to status,
+      "path" to path,
+      "savedToAlbum" to savedToAlbum,
+      "code" to errorCode,
+      "error" to error,
+      "bytes" to publishedBytes?.toDouble(),
+      "publishMs" to publishMs,
+      "throughputMBps" to throughputMBps
+    )
+  }
+
+  private val entries = LinkedHashMap<String, Entry>()
+  private var isLoaded = false
+
+  @Synchronized
+  fun all(): List<Entry> {
+    load()
+    return entries.values.toList()
+  }
+
+  @Synchronized
+  fun get(id: String): Entry? {
+    load()
+    return entries[id]
+  }
+
+  @Synchronized
+  fun put(entry: Entry) {
+    load()
+    entries[entry.id] = entry
+    save()
+  }
+
+  @Synchronized
+  fun update(id: String, block: (Entry) -> Unit) {
+    load()
+    val entry = entries[id] ?: return
+    block(entry)
+    save()
+  }
+
+  @Synchronized
+  fun remove(id: String) {
+    load()
+    if (entries.remove(id) != null) save()
+  }
+
+  private fun load() {
+    if (isLoaded) return
+    isLoaded = true
+    if (!file.exists()) return
+    try {
+      val rows = JSONArray(file.readText())
+      for (index in 0 until rows.length()) {
+        val row = rows.getJSONObject(index)
+        val entry = Entry(
+          id = row.getString("id"),
+          deviceSerial = row.getString("deviceSerial"),
+          cameraNo = row.getInt("cameraNo"),
+          verifyCode = row.getString("verifyCode"),
+          startTime = row.getLong("startTime"),
+          stopTime = row.getLong("stopTime"),
+          outputDirectory = row.getString("outputDirectory"),
+          saveToGallery = row.getBoolean("saveToGallery"),
+          segments = row.optInt("segments", 1),
+          status = row.getString("status"),
+          path = row.optString("path").ifEmpty { null },
+          savedToAlbum = row.optBoolean("savedToAlbum"),
+          errorCode = row.optString("errorCode").ifEmpty { null },
+          error = row.optString("error").ifEmpty { null },
+          publishedBytes = if (row.has("publishedBytes")) row.getLong("publishedBytes") else null,
+          publishMs = if (row.has("publishMs")) row.getDouble("publishMs") else null,
+          throughputMBps = if (row.has("throughputMBps")) row.getDouble("throughputMBps") else null
+        )
+        entries[entry.id] = entry
+      }
+    } catch (e: Exception) {
+      // A corrupt table only loses bookkeeping; start over rather than fail every download.
+      Log.w("DownloadJobStore", "Discarding unreadable job table: ${e.message}")
+      entries.clear()
+    }
+  }
+
+  private fun save() {
+    val rows = JSONArray()
+    entries.values.forEach { entry ->
+      rows.put(JSONObject().apply {
+        put("id", entry.id)
+        put("deviceSerial", entry.deviceSerial)
+        put("cameraNo", entry.cameraNo)
+        put("verifyCode", entry.verifyCode)
+        put("startTime", entry.startTime)
+        put("stopTime", entry.stopTime)
+        put("outputDirectory", entry.outputDirectory)
+        put("saveToGallery", entry.saveToGallery)
+        put("segments", entry.segments)
+        put("status", entry.status)
+        entry.path?.let { put("path", it) }
+        put("savedToAlbum", entry.savedToAlbum)
+        entry.errorCode?.let { put("errorCode", it) }
+        entry.error?.let { put("error", it) }
+        entry.publishedBytes?.let { put("publishedBytes", it) }
+        entry.publishMs?.let { put("publishMs", it) }
+        entry.throughputMBps?.let { put("throughputMBps", it) }
+      })
+    }
+    try {
+      file.parentFile?.mkdirs()
+      val temp = File(file.parentFile, "${file.name}.tmp")
+      temp.writeText(rows.toString())
+      if (!temp.renameTo(file)) {
+        temp.delete()
+      }
+    } catch (e: Exception) {
+      Log.w("DownloadJobStore", "Failed to persist job table: ${e.message}")
+    }
+  }
+
+  companion object {
+    const val STATUS_ACTIVE = "active"
+    const val STATUS_SUCCEEDED = "succeeded"
+    const val STATUS_FAILED = "failed"
+  }
+}
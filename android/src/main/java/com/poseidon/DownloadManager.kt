@@ -0,0 +1,465 @@
+package com.poseidon
+
+import android.content.Context
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.SystemClock
+import android.util.Log
+import com.videogo.openapi.EZOpenSDKListener
+import com.videogo.openapi.bean.EZDeviceRecordFile
+import com.videogo.stream.EZDeviceStreamDownload
+import java.io.File
+import java.util.Calendar
+import java.util.UUID
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Process-wide queue of SD-card record downloads. At most [maxConcurrentDownloads] device streams
+ * run at once, and at most [maxStreamsPerDevice] of them against the same device; the rest wait in
+ * FIFO order. A job may be split into several time segments that download as separate streams, so
+ * a long export is not bound by one stream's throughput. Each segment converts from .ps to MP4 on
+ * [PsConverter] as soon as it is downloaded, and the parts are then joined in order (see
+ * [Mp4Concat]). A segment that fails or stalls is retried on its own.
+ *
+ * Download progress comes from the media clock inside the growing .ps files (see [PsClock]) and
+ * conversion progress from the SDK transformer's percentage. Queue and job state live on one
+ * background thread; listeners are called from that thread or from a worker.
+ */
+object DownloadManager {
+
+  enum class Stage { QUEUED, DOWNLOADING, CONVERTING, SAVING }
+
+  class Request(
+    val deviceSerial: String,
+    val cameraNo: Int,
+    val verifyCode: String,
+    val recordFile: EZDeviceRecordFile,
+    val outputDirectory: File,
+    val saveToGallery: Boolean,
+    val segments: Int = 1
+  )
+
+  interface Listener {
+    fun onProgress(job: Job)
+    fun onSuccess(job: Job, path: String, savedToAlbum: Boolean)
+    fun onError(job: Job, code: String, message: String, path: String?)
+  }
+
+  class Job internal constructor(val id: String, val request: Request, internal val listener: Listener) {
+    @Volatile
+    var stage = Stage.QUEUED
+      internal set
+
+    // Size of the downloaded .ps files so far.
+    @Volatile
+    var bytesWritten = 0L
+      internal set
+
+    // Progress of the current stage, 0.0 to 1.0.
+    @Volatile
+    var progress = 0.0
+      internal set
+
+    // Set once the MP4 has been copied into the gallery.
+    @Volatile
+    var published: MediaStorePublisher.Published? = null
+      internal set
+
+    @Volatile
+    internal var isCancelled = false
+
+    internal val psFile = File(request.outputDirectory, "${request.deviceSerial}_${System.currentTimeMillis()}_$id.ps")
+    internal val mp4File = File(request.outputDirectory, psFile.nameWithoutExtension + ".mp4")
+    internal val startedAt = System.nanoTime()
+    internal var isFinished = false
+    internal val segments = split(this)
+
+    internal val durationMs: Long
+      get() {
+        val start = request.recordFile.startTime?.timeInMillis ?: return 0L
+        val stop = request.recordFile.stopTime?.timeInMillis ?: return 0L
+        return stop - start
+      }
+  }
+
+  // One device stream of a job. A job that is not split has a single segment writing the job's
+  // own files, so nothing needs joining afterwards.
+  internal class Segment(val job: Job, val index: Int, val recordFile: EZDeviceRecordFile, val psFile: File, val mp4File: File) {
+    var downloader: EZDeviceStreamDownload? = null
+    var attempts = 0
+    var isDownloaded = false
+    var isConverted = false
+    var isStalled = false
+    var conversion: PsConverter.Task? = null
+    var bytesWritten = 0L
+    var coveredMs = 0L
+    var lastGrowthAt = 0L
+
+    @Volatile
+    var conversionProgress = 0.0
+
+    val durationMs: Long
+      get() {
+        val start = recordFile.startTime?.timeInMillis ?: return 0L
+        val stop = recordFile.stopTime?.timeInMillis ?: return 0L
+        return stop - start
+      }
+  }
+
+  private const val PROGRESS_INTERVAL_MS = 500L
+  // A segment whose file has not grown for this long is restarted.
+  private const val STALL_TIMEOUT_MS = 30_000L
+  private const val MAX_SEGMENT_ATTEMPTS = 3
+  // Shorter segments spend more time on stream setup than they save.
+  private const val MIN_SEGMENT_MS = 60_000L
+  private const val MAX_SEGMENTS = 8
+
+  @Volatile
+  var maxConcurrentDownloads = 2
+    set(value) {
+      field = maxOf(1, value)
+      handler.post { pump() }
+    }
+
+  // Devices serve only a few SD-card streams at once; extra ones fail or slow every stream down.
+  @Volatile
+  var maxStreamsPerDevice = 2
+    set(value) {
+      field = maxOf(1, value)
+      handler.post { pump() }
+    }
+
+  private val thread = HandlerThread("ExpoEzviz-downloads").apply { start() }
+  private val handler = Handler(thread.looper)
+  // Joins and publishes finished jobs; conversion itself runs in PsConverter.
+  private val finisher = SdkExecutor(parallelism = 2)
+
+  private val jobs = ConcurrentHashMap<String, Job>()
+  // Both only touched on the download thread.
+  private val pending = ArrayDeque<Segment>()
+  private val downloading = LinkedHashSet<Segment>()
+  private var appContext: Context? = null
+  // A stall retry inside progressRunnable starts a stream too; this keeps one copy scheduled.
+  private var isProgressScheduled = false
+
+  private val progressRunnable = object : Runnable {
+    override fun run() {
+      isProgressScheduled = false
+      val now = SystemClock.elapsedRealtime()
+      downloading.toList().forEach { updateSegmentProgress(it, now) }
+      downloading.map { it.job }.distinct().forEach { updateDownloadProgress(it) }
+      if (downloading.isNotEmpty()) scheduleProgress()
+    }
+  }
+
+  private fun scheduleProgress() {
+    if (isProgressScheduled) return
+    isProgressScheduled = true
+    handler.postDelayed(progressRunnable, PROGRESS_INTERVAL_MS)
+  }
+
+  fun enqueue(context: Context, request: Request, listener: Listener, id: String = UUID.randomUUID().toString()): Job {
+    val job = Job(id, request, listener)
+    jobs[job.id] = job
+    val appContext = context.applicationContext
+    handler.post {
+      pending.addAll(job.segments)
+      pump(appContext)
+    }
+    return job
+  }
+
+  fun cancel(jobId: String): Boolean {
+    val job = jobs[jobId] ?: return false
+    job.isCancelled = true
+    handler.post {
+      pending.removeAll { it.job === job }
+      val running = downloading.filter { it.job === job }
+      // Each stopped segment is handled as a cancelled error, which fails the job.
+      running.forEach { stopSegment(it) }
+      if (running.isEmpty() && (job.stage == Stage.QUEUED || job.stage == Stage.DOWNLOADING)) {
+        fail(job, "download-cancelled", "Download was cancelled.")
+      }
+      // A cancelled conversion reports back through onSegmentConverted, which fails the job.
+      job.segments.forEach { segment -> segment.conversion?.let { PsConverter.cancel(it) } }
+    }
+    return true
+  }
+
+  fun job(jobId: String): Job? = jobs[jobId]
+
+  // Splits the record's time range into equal, back-to-back segments.
+  private fun split(job: Job): List<Segment> {
+    val request = job.request
+    val whole = listOf(Segment(job, 0, request.recordFile, job.psFile, job.mp4File))
+    val start = request.recordFile.startTime?.timeInMillis ?: return whole
+    val stop = request.recordFile.stopTime?.timeInMillis ?: return whole
+    val count = request.segments.coerceIn(1, MAX_SEGMENTS).coerceAtMost(maxOf(1, ((stop - start) / MIN_SEGMENT_MS).toInt()))
+    if (count == 1) return whole
+
+    val length = (stop - start) / count
+    return (0 until count).map { index ->
+      val segmentStart = start + index * length
+      val segmentStop = if (index == count - 1) stop else segmentStart + length
+      val recordFile = EZDeviceRecordFile().apply {
+        startTime = Calendar.getInstance().apply { timeInMillis = segmentStart }
+        stopTime = Calendar.getInstance().apply { timeInMillis = segmentStop }
+      }
+      val name = "${job.psFile.nameWithoutExtension}_part$index"
+      Segment(job, index, recordFile, File(request.outputDirectory, "$name.ps"), File(request.outputDirectory, "$name.mp4"))
+    }
+  }
+
+  private fun pump(context: Context? = null) {
+    if (context != null) appContext = context
+    val ctx = appContext ?: return
+    val iterator = pending.iterator()
+    while (downloading.size < maxConcurrentDownloads && iterator.hasNext()) {
+      val segment = iterator.next()
+      val serial = segment.job.request.deviceSerial
+      if (downloading.count { it.job.request.deviceSerial == serial } >= maxStreamsPerDevice) continue
+      iterator.remove()
+      start(ctx, segment)
+    }
+  }
+
+  private fun start(context: Context, segment: Segment) {
+    val job = segment.job
+    if (job.isFinished) return
+    if (job.isCancelled) {
+      fail(job, "download-cancelled", "Download was cancelled.")
+      return
+    }
+    segment.psFile.parentFile?.mkdirs()
+    segment.attempts++
+    segment.isStalled = false
+    segment.lastGrowthAt = SystemClock.elapsedRealtime()
+    downloading.add(segment)
+    scheduleProgress()
+    if (job.stage == Stage.QUEUED) {
+      job.stage = Stage.DOWNLOADING
+      job.progress = 0.0
+      job.listener.onProgress(job)
+    }
+
+    val request = job.request
+    Log.d("DownloadManager", "Starting download ${job.id} segment ${segment.index} (attempt ${segment.attempts}) to ${segment.psFile}")
+    val downloader = EZDeviceStreamDownload(segment.psFile.absolutePath, request.deviceSerial, request.cameraNo, segment.recordFile)
+    // Callbacks from a stream that was already handled (stopped, or an earlier attempt) are ignored.
+    downloader.setStreamDownloadCallback(object : EZOpenSDKListener.EZStreamDownloadCallback {
+      override fun onSuccess(path: String) {
+        handler.post { if (segment.downloader === downloader) onSegmentDownloaded(context, segment) }
+      }
+
+      override fun onError(error: EZOpenSDKListener.EZStreamDownloadError?) {
+        handler.post { if (segment.downloader === downloader) onSegmentError(segment, error) }
+      }
+    })
+    segment.downloader = downloader
+    downloader.start()
+  }
+
+  // Stops a running segment and handles it straight away instead of waiting for the SDK to report
+  // the stop, which it is not guaranteed to do; a late onError then finds the segment handled.
+  private fun stopSegment(segment: Segment) {
+    val downloader = segment.downloader ?: return
+    try {
+      downloader.stop()
+    } catch (e: Exception) {
+      Log.w("DownloadManager", "Failed to stop segment ${segment.index} of ${segment.job.id}: ${e.message}")
+    }
+    onSegmentError(segment, null)
+  }
+
+  private fun onSegmentDownloaded(context: Context, segment: Segment) {
+    val job = segment.job
+    finishStream(segment)
+    if (job.isFinished) return
+    if (job.isCancelled) {
+      fail(job, "download-cancelled", "Download was cancelled.")
+      return
+    }
+    segment.isDownloaded = true
+    segment.bytesWritten = segment.psFile.length()
+    segment.coveredMs = segment.durationMs
+    if (job.segments.all { it.isDownloaded }) {
+      job.bytesWritten = job.segments.sumOf { it.bytesWritten }
+      job.stage = Stage.CONVERTING
+      job.progress = job.segments.sumOf { it.conversionProgress } / job.segments.size
+      job.listener.onProgress(job)
+    } else {
+      updateDownloadProgress(job)
+    }
+    convert(context, segment)
+  }
+
+  private fun onSegmentError(segment: Segment, error: EZOpenSDKListener.EZStreamDownloadError?) {
+    val job = segment.job
+    finishStream(segment)
+    if (job.isFinished) return
+    when {
+      job.isCancelled -> fail(job, "download-cancelled", "Download was cancelled.")
+      segment.attempts < MAX_SEGMENT_ATTEMPTS -> {
+        val reason = if (segment.isStalled) "stalled" else "failed: $error"
+        Log.w("DownloadManager", "Segment ${segment.index} of ${job.id} $reason; retrying")
+        segment.psFile.delete()
+        segment.bytesWritten = 0L
+        segment.coveredMs = 0L
+        // Ahead of other jobs, so a retry does not wait behind the whole queue.
+        pending.addFirst(segment)
+        pump()
+      }
+      else -> fail(job, "download-error", "Download failed: $error")
+    }
+  }
+
+  private fun finishStream(segment: Segment) {
+    downloading.remove(segment)
+    segment.downloader = null
+    if (segment.job.isFinished) segment.psFile.delete()
+    pump()
+  }
+
+  private fun updateSegmentProgress(segment: Segment, now: Long) {
+    val bytes = segment.psFile.length()
+    if (bytes != segment.bytesWritten) {
+      segment.bytesWritten = bytes
+      segment.lastGrowthAt = now
+      PsClock.coveredMs(segment.psFile)?.let { segment.coveredMs = minOf(it, segment.durationMs) }
+    } else if (now - segment.lastGrowthAt > STALL_TIMEOUT_MS && !segment.isStalled) {
+      segment.isStalled = true
+      stopSegment(segment)
+    }
+  }
+
+  private fun updateDownloadProgress(job: Job) {
+    if (job.stage != Stage.DOWNLOADING) return
+    val bytes = job.segments.sumOf { it.bytesWritten }
+    val durationMs = job.durationMs
+    // Stop short of 1.0: the files are only complete once the SDK reports success.
+    val progress = if (durationMs > 0) (job.segments.sumOf { it.coveredMs }.toDouble() / durationMs).coerceIn(0.0, 0.99) else job.progress
+    if (bytes == job.bytesWritten && progress == job.progress) return
+    job.bytesWritten = bytes
+    job.progress = progress
+    job.listener.onProgress(job)
+  }
+
+  private fun updateConversionProgress(job: Job) {
+    if (job.stage != Stage.CONVERTING) return
+    val progress = job.segments.sumOf { it.conversionProgress } / job.segments.size
+    if (progress == job.progress) return
+    job.progress = progress
+    job.listener.onProgress(job)
+  }
+
+  private fun convert(context: Context, segment: Segment) {
+    val job = segment.job
+    segment.conversion = PsConverter.submit(segment.psFile, segment.mp4File, job.request.verifyCode, object : PsConverter.Callback {
+      override fun onProgress(task: PsConverter.Task) {
+        segment.conversionProgress = task.progress
+        handler.post { updateConversionProgress(job) }
+      }
+
+      override fun onComplete(task: PsConverter.Task, code: String?) {
+        segment.psFile.delete()
+        handler.post { onSegmentConverted(context, segment, code == null) }
+      }
+    })
+  }
+
+  private fun onSegmentConverted(context: Context, segment: Segment, converted: Boolean) {
+    val job = segment.job
+    segment.conversion = null
+    if (job.isFinished) {
+      segment.mp4File.delete()
+      return
+    }
+    when {
+      job.isCancelled -> fail(job, "download-cancelled", "Download was cancelled.")
+      !converted -> fail(job, "conversion-error", "Conversion failed.")
+      else -> {
+        segment.isConverted = true
+        if (job.segments.all { it.isConverted }) {
+          finisher.execute(SdkPriority.BACKGROUND) { complete(context, job) }
+        }
+      }
+    }
+  }
+
+  // Runs on a worker once every segment is an MP4.
+  private fun complete(context: Context, job: Job) {
+    if (job.segments.size > 1) {
+      try {
+        Mp4Concat.concat(job.segments.map { it.mp4File }, job.mp4File)
+      } catch (e: Exception) {
+        Log.e("DownloadManager", "Joining segments of ${job.id} failed: ${e.message}")
+        fail(job, "conversion-error", "Joining segments failed.")
+        return
+      } finally {
+        job.segments.forEach { it.mp4File.delete() }
+      }
+    }
+    when {
+      job.isCancelled -> fail(job, "download-cancelled", "Download was cancelled.")
+      job.request.saveToGallery -> publish(context, job)
+      else -> succeed(job, job.mp4File.absolutePath, false)
+    }
+  }
+
+  private fun publish(context: Context, job: Job) {
+    job.stage = Stage.SAVING
+    job.progress = 0.0
+    job.listener.onProgress(job)
+    try {
+      val published = MediaStorePublisher.publishVideo(context, job.mp4File)
+      Log.d("DownloadManager", "Published ${job.id}: ${published.bytes} bytes at ${"%.1f".format(published.throughputMBps)} MB/s")
+      job.published = published
+      job.mp4File.delete()
+      succeed(job, published.uri.toString(), true)
+    } catch (e: Exception) {
+      Log.e("DownloadManager", "Failed to save video to photo album. Error: ${e.localizedMessage}")
+      fail(job, "save-error", "Failed to save video to photo album.", job.mp4File.absolutePath)
+    }
+  }
+
+  private fun succeed(job: Job, path: String, savedToAlbum: Boolean) {
+    if (!markFinished(job)) return
+    recordOutcome(job, null)
+    job.listener.onSuccess(job, path, savedToAlbum)
+  }
+
+  private fun fail(job: Job, code: String, message: String, path: String? = null) {
+    if (!markFinished(job)) return
+    job.segments.forEach {
+      it.psFile.delete()
+      it.mp4File.delete()
+    }
+    // A failed gallery copy hands the converted file back instead.
+    if (path != job.mp4File.absolutePath) job.mp4File.delete()
+    // Stop this job's other streams; they must not keep the device busy for nothing.
+    handler.post {
+      pending.removeAll { it.job === job }
+      downloading.filter { it.job === job }.forEach { stopSegment(it) }
+      job.segments.forEach { segment -> segment.conversion?.let { PsConverter.cancel(it) } }
+    }
+    recordOutcome(job, code)
+    job.listener.onError(job, code, message, path)
+  }
+
+  private fun markFinished(job: Job): Boolean {
+    synchronized(job) {
+      if (job.isFinished) return false
+      job.isFinished = true
+    }
+    jobs.remove(job.id)
+    return true
+  }
+
+  private fun recordOutcome(job: Job, errorCode: String?) {
+    if (!EzvizMetrics.isEnabled) return
+    val elapsed = System.nanoTime() - job.startedAt
+    val operation = EzvizMetrics.operation("downloadRecordFile")
+    if (errorCode == null) operation.recordSuccess(elapsed) else operation.recordError(errorCode, elapsed)
+    job.published?.let { EzvizMetrics.operation("publishVideo").recordSuccess(it.elapsedNanos) }
+  }
+}
@@ -0,0 +1,115 @@
+package com.poseidon
+
+import android.app.Notification
+import android.app.NotificationChannel
+import android.app.NotificationManager
+import android.app.Service
+import android.content.Context
+import android.content.Intent
+import android.content.pm.ServiceInfo
+import android.os.Build
+import android.os.IBinder
+import android.util.Log
+
+/**
+ * Foreground service that keeps the process alive while background downloads run, so leaving the
+ * screen or backgrounding the app does not end an SD-card export. It does no work itself:
+ * [BackgroundDownloads] starts it when the first job becomes active, updates its notification
+ * and stops it when the last job finishes. A service started with startForegroundService must
+ * reach startForeground before it stops, so when the last job ends while the start is still
+ * pending the service stops itself from onStartCommand instead.
+ *
+ * It is not sticky. A job interrupted by process death is restarted from the persisted job table
+ * once the app has initialised the SDK again (resumeBackgroundDownloads), since a service
+ * restarted on its own would have no SDK credentials to download with.
+ */
+class DownloadService : Service() {
+
+  override fun onBind(intent: Intent?): IBinder? = null
+
+  override fun onStartCommand(intent: Intent?, flags: Int, startId: Int): Int {
+    val notification = buildNotification(this, maxOf(1, synchronized(lock) { activeJobs }), -1)
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+      startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_DATA_SYNC)
+    } else {
+      startForeground(NOTIFICATION_ID, notification)
+    }
+    val isIdle = synchronized(lock) {
+      isStartPending = false
+      isRunning = activeJobs > 0
+      !isRunning
+    }
+    // Every job ended before the service got here.
+    if (isIdle) stopSelf()
+    return START_NOT_STICKY
+  }
+
+  override fun onDestroy() {
+    synchronized(lock) { isRunning = false }
+    super.onDestroy()
+  }
+
+  companion object {
+    private const val CHANNEL_ID = "ezviz-downloads"
+    private const val NOTIFICATION_ID = 0x455A
+
+    private val lock = Any()
+    // All three guarded by lock.
+    private var isRunning = false
+    // startForegroundService was called and onStartCommand has not run yet.
+    private var isStartPending = false
+    private var activeJobs = 0
+
+    // percent is -1 when unknown.
+    fun update(context: Context, activeJobs: Int, percent: Int) {
+      val appContext = context.applicationContext
+      val action = synchronized(lock) {
+        this.activeJobs = activeJobs
+        when {
+          isStartPending -> return
+          activeJobs == 0 -> {
+            if (!isRunning) return
+            isRunning = false
+            "stop"
+          }
+          isRunning -> "notify"
+          else -> {
+            isStartPending = true
+            "start"
+          }
+        }
+      }
+      when (action) {
+        "stop" -> appContext.stopService(Intent(appContext, DownloadService::class.java))
+        "notify" -> {
+          val manager = appContext.getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager
+          manager.notify(NOTIFICATION_ID, buildNotification(appContext, activeJobs, percent))
+        }
+        else -> try {
+          appContext.startForegroundService(Intent(appContext, DownloadService::class.java))
+        } catch (e: Exception) {
+          // Android 12+ refuses to start foreground services from the background. The downloads
+          // still run; they are just not protected from the process being reclaimed.
+          Log.w("DownloadService", "Could not start download service: ${e.message}")
+          synchronized(lock) { isStartPending = false }
+        }
+      }
+    }
+
+    private fun buildNotification(context: Context, activeJobs: Int, percent: Int): Notification {
+      val manager = context.getSystemService(Context.NOTIFICATION_SERVICE) as NotificationManager
+      if (manager.getNotificationChannel(CHANNEL_ID) == null) {
+        manager.createNotificationChannel(
+          NotificationChannel(CHANNEL_ID, "Video downloads", NotificationManager.IMPORTANCE_LOW)
+        )
+      }
+      return Notification.Builder(context, CHANNEL_ID)
+        .setSmallIcon(android.R.drawable.stat_sys_download)
+        .setContentTitle(if (activeJobs == 1) "Downloading video" else "Downloading $activeJobs videos")
+        .setProgress(100, maxOf(percent, 0), percent < 0)
+        .setOngoing(true)
+        .setOnlyAlertOnce(true)
+        .build()
+    }
+  }
+}
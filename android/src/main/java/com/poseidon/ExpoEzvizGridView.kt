@@ -0,0 +1,291 @@
+package com.poseidon
+
+import android.content.Context
+import android.graphics.Rect
+import android.os.Handler
+import android.os.Looper
+import android.os.Message
+import android.os.SystemClock
+import android.util.Log
+import android.view.SurfaceHolder
+import android.view.SurfaceView
+import android.view.ViewTreeObserver
+import com.videogo.errorlayer.ErrorInfo
+import com.videogo.openapi.EZConstants
+import com.videogo.openapi.EZOpenSDK
+import com.videogo.openapi.EZPlayer
+import expo.modules.kotlin.AppContext
+import expo.modules.kotlin.records.Field
+import expo.modules.kotlin.records.Record
+import expo.modules.kotlin.viewevent.EventDispatcher
+import expo.modules.kotlin.views.ExpoView
+import kotlin.math.ceil
+import kotlin.math.sqrt
+
+class ExpoGridCamera : Record {
+    @Field var deviceSerial: String = ""
+    @Field var cameraNo: Int = 1
+    @Field var verifyCode: String? = null
+}
+
+/**
+ * Renders many live streams in one view. Tiles are scheduled centrally: only tiles that are on
+ * screen stream, at most [maxActiveStreams] of them (largest first), and tiles smaller than
+ * [highQualityMinWidth] are started at the lowest video quality.
+ *
+ * Scheduling, tile state and surface binding live on the main thread. Every SDK call and player
+ * message of a tile runs on that tile's player looper (see [PlayerThreads]), so a wall of 9 to 16
+ * streams does not queue stream setup and teardown on the UI thread.
+ */
+class ExpoEzvizGridView(context: Context, appContext: AppContext) : ExpoView(context, appContext) {
+
+    private enum class TileState { STOPPED, LOADING, PLAYING, FAILED }
+
+    private inner class Tile(val camera: ExpoGridCamera, val index: Int) {
+        val surfaceView = SurfaceView(context)
+        // Owned by playerHandler's thread; read on main only to bind the surface.
+        @Volatile
+        var player: EZPlayer? = null
+        // Main thread only.
+        var state = TileState.STOPPED
+        var isLowQuality = false
+        var isSurfaceReady = false
+        var retryAt = 0L
+
+        // Receives the tile's player messages and runs its SDK calls. The SDK reports messages
+        // per Handler, so each tile's handler forwards into the grid's single dispatcher.
+        val playerHandler = object : Handler(PlayerThreads.nextLooper()) {
+            override fun handleMessage(msg: Message) {
+                dispatchTileMessage(this@Tile, msg)
+            }
+        }
+
+        val key: PlayerPool.Key
+            get() = PlayerPool.Key(camera.deviceSerial, camera.cameraNo)
+    }
+
+    private var tiles: List<Tile> = emptyList()
+    private val scheduler = Handler(Looper.getMainLooper())
+    private val updateRunnable = Runnable { updateStreams() }
+    private val visibleRect = Rect()
+
+    // Props
+    var columns: Int = 0
+        set(value) {
+            field = value
+            requestLayout()
+        }
+    var maxActiveStreams: Int = DEFAULT_MAX_ACTIVE_STREAMS
+        set(value) {
+            field = value
+            scheduleUpdate()
+        }
+    var highQualityMinWidth: Int = DEFAULT_HIGH_QUALITY_MIN_WIDTH_DP
+        set(value) {
+            field = value
+            scheduleUpdate()
+        }
+
+    val onTileStateChange by EventDispatcher()
+
+    private val scrollListener = ViewTreeObserver.OnScrollChangedListener { scheduleUpdate() }
+    private val layoutListener = ViewTreeObserver.OnGlobalLayoutListener { scheduleUpdate() }
+
+    fun setCameras(cameras: List<ExpoGridCamera>) {
+        val unchanged = cameras.size == tiles.size && cameras.zip(tiles).all { (camera, tile) ->
+            camera.deviceSerial == tile.camera.deviceSerial && camera.cameraNo == tile.camera.cameraNo
+        }
+        if (unchanged) return
+
+        tiles.forEach { releaseTile(it) }
+        removeAllViews()
+        tiles = cameras.mapIndexed { index, camera -> Tile(camera, index) }
+        tiles.forEach { tile ->
+            tile.surfaceView.holder.addCallback(object : SurfaceHolder.Callback {
+                override fun surfaceCreated(holder: SurfaceHolder) {
+                    tile.isSurfaceReady = true
+                    tile.player?.setSurfaceHold(holder)
+                    scheduleUpdate()
+                }
+                override fun surfaceChanged(holder: SurfaceHolder, format: Int, width: Int, height: Int) {
+                    scheduleUpdate()
+                }
+                override fun surfaceDestroyed(holder: SurfaceHolder) {
+                    tile.isSurfaceReady = false
+                    tile.player?.setSurfaceHold(null)
+                    scheduleUpdate()
+                }
+            })
+            addView(tile.surfaceView)
+        }
+        requestLayout()
+        scheduleUpdate()
+    }
+
+    override fun onAttachedToWindow() {
+        super.onAttachedToWindow()
+        viewTreeObserver.addOnScrollChangedListener(scrollListener)
+        viewTreeObserver.addOnGlobalLayoutListener(layoutListener)
+        scheduleUpdate()
+    }
+
+    override fun onDetachedFromWindow() {
+        super.onDetachedFromWindow()
+        viewTreeObserver.removeOnScrollChangedListener(scrollListener)
+        viewTreeObserver.removeOnGlobalLayoutListener(layoutListener)
+        scheduler.removeCallbacksAndMessages(null)
+        tiles.forEach { releaseTile(it) }
+    }
+
+    override fun onLayout(changed: Boolean, l: Int, t: Int, r: Int, b: Int) {
+        if (tiles.isEmpty()) return
+        val columnCount = if (columns > 0) columns else ceil(sqrt(tiles.size.toDouble())).toInt()
+        val rowCount = ceil(tiles.size / columnCount.toDouble()).toInt()
+        val tileWidth = width / columnCount
+        val tileHeight = height / rowCount
+        tiles.forEachIndexed { index, tile ->
+            val left = (index % columnCount) * tileWidth
+            val top = (index / columnCount) * tileHeight
+            tile.surfaceView.layout(left, top, left + tileWidth, top + tileHeight)
+        }
+        scheduleUpdate()
+    }
+
+    // Layout, scroll and surface callbacks arrive in bursts; collapse them into one pass.
+    private fun scheduleUpdate() {
+        scheduler.removeCallbacks(updateRunnable)
+        scheduler.post(updateRunnable)
+    }
+
+    private fun updateStreams() {
+        if (!isAttachedToWindow) return
+        val visibleTiles = tiles.filter { it.isSurfaceReady && isOnScreen(it) }
+        val budgeted = visibleTiles
+            .sortedByDescending { it.surfaceView.width * it.surfaceView.height }
+            .take(maxOf(0, maxActiveStreams))
+            .toSet()
+        val minHighQualityWidthPx = highQualityMinWidth * resources.displayMetrics.density
+
+        tiles.forEach { tile ->
+            if (tile in budgeted) {
+                startTile(tile, tile.surfaceView.width < minHighQualityWidthPx)
+            } else {
+                stopTile(tile)
+            }
+        }
+    }
+
+    private fun isOnScreen(tile: Tile): Boolean {
+        if (!tile.surfaceView.isShown || tile.surfaceView.width == 0 || tile.surfaceView.height == 0) return false
+        if (!tile.surfaceView.getGlobalVisibleRect(visibleRect)) return false
+        val visibleArea = visibleRect.width().toLong() * visibleRect.height()
+        val tileArea = tile.surfaceView.width.toLong() * tile.surfaceView.height
+        return visibleArea * 4 >= tileArea // at least a quarter of the tile is on screen
+    }
+
+    private fun startTile(tile: Tile, lowQuality: Boolean) {
+        val isActive = tile.state == TileState.LOADING || tile.state == TileState.PLAYING
+        if (isActive && tile.isLowQuality == lowQuality) return
+        if (tile.state == TileState.FAILED && SystemClock.uptimeMillis() < tile.retryAt) return
+        if (tile.camera.deviceSerial.isEmpty()) return
+
+        tile.isLowQuality = lowQuality
+        setTileState(tile, TileState.LOADING)
+        tile.playerHandler.post {
+            val player = tile.player ?: createTilePlayer(tile)
+            if (player == null) {
+                scheduler.post { onTileFailed(tile, "Failed to create player.") }
+                return@post
+            }
+            if (isActive) {
+                player.stopRealPlay()
+            }
+            // Quality is chosen before the stream starts; switching class means restarting it.
+            player.setVideoQuality(
+                if (lowQuality) EZConstants.EZVideoQuality.VIDEO_PERFORMANCE_PRIORITY
+                else EZConstants.EZVideoQuality.VIDEO_QUALITY_PRIORITY
+            )
+            player.startRealPlay()
+        }
+    }
+
+    private fun stopTile(tile: Tile) {
+        if (tile.state != TileState.LOADING && tile.state != TileState.PLAYING) return
+        setTileState(tile, TileState.STOPPED)
+        tile.playerHandler.post { tile.player?.stopRealPlay() }
+    }
+
+    // Player thread only.
+    private fun createTilePlayer(tile: Tile): EZPlayer? {
+        val pooled = PlayerPool.acquire(tile.key)
+        val player = pooled?.player ?: EZOpenSDK.getInstance().createPlayer(tile.camera.deviceSerial, tile.camera.cameraNo)
+            ?: return null
+        if (pooled?.isStreaming == true) {
+            // A parked stream's quality is unknown, so restart it under the grid's rules.
+            player.stopRealPlay()
+        }
+        player.setHandler(tile.playerHandler)
+        tile.camera.verifyCode?.takeIf { it.isNotEmpty() }?.let { player.setPlayVerifyCode(it) }
+        tile.player = player
+        scheduler.post {
+            if (tile.player === player && tile.isSurfaceReady) player.setSurfaceHold(tile.surfaceView.holder)
+        }
+        return player
+    }
+
+    private fun releaseTile(tile: Tile) {
+        // A tile still connecting has a running stream too; with no grace period the pool stops it.
+        val isStreaming = tile.state == TileState.LOADING || tile.state == TileState.PLAYING
+        tile.state = TileState.STOPPED
+        tile.playerHandler.post {
+            val player = tile.player ?: return@post
+            tile.player = null
+            PlayerPool.park(tile.key, player, isStreaming, 0)
+        }
+    }
+
+    // Player thread; tile state changes go back to the main thread. Messages that arrive after
+    // the scheduler has stopped the tile are dropped there.
+    private fun dispatchTileMessage(tile: Tile, msg: Message) {
+        when (msg.what) {
+            EZConstants.EZRealPlayConstants.MSG_REALPLAY_PLAY_SUCCESS -> scheduler.post {
+                if (tile.state == TileState.LOADING) setTileState(tile, TileState.PLAYING)
+            }
+            EZConstants.EZRealPlayConstants.MSG_REALPLAY_PLAY_FAIL -> {
+                val errorInfo = msg.obj as? ErrorInfo
+                val errorMessage = errorInfo?.description ?: "Unknown error"
+                Log.e("ExpoEzvizGridView", "Tile ${tile.index} failed to play: $errorMessage")
+                scheduler.post { onTileFailed(tile, errorMessage) }
+            }
+            else -> {
+                Log.d("ExpoEzvizGridView", "Tile ${tile.index} received player message: ${msg.what}")
+            }
+        }
+    }
+
+    private fun onTileFailed(tile: Tile, errorMessage: String) {
+        if (tile.state != TileState.LOADING && tile.state != TileState.PLAYING) return
+        tile.retryAt = SystemClock.uptimeMillis() + FAILED_RETRY_DELAY_MS
+        scheduler.postDelayed({ scheduleUpdate() }, FAILED_RETRY_DELAY_MS)
+        setTileState(tile, TileState.FAILED, errorMessage)
+    }
+
+    private fun setTileState(tile: Tile, state: TileState, error: String? = null) {
+        if (tile.state == state && error == null) return
+        tile.state = state
+        onTileStateChange(mapOf(
+            "index" to tile.index,
+            "deviceSerial" to tile.camera.deviceSerial,
+            "cameraNo" to tile.camera.cameraNo,
+            "state" to state.name.lowercase(),
+            "lowQuality" to tile.isLowQuality,
+            "error" to error
+        ))
+    }
+
+    companion object {
+        const val DEFAULT_MAX_ACTIVE_STREAMS = 9
+        const val DEFAULT_HIGH_QUALITY_MIN_WIDTH_DP = 480
+        private const val FAILED_RETRY_DELAY_MS = 10_000L
+    }
+}
@@ -1,5 +1,6 @@
 package com.poseidon
 
+import android.content.Context
 import android.os.Build
 import androidx.annotation.RequiresApi
 import android.util.Log
@@ -11,11 +12,14 @@ import expo.modules.kotlin.modules.Module
 import expo.modules.kotlin.modules.ModuleDefinition
 import expo.modules.kotlin.records.Field
 import expo.modules.kotlin.records.Record
+import java.io.File
 import java.time.Duration
 import java.time.ZoneOffset
 import java.time.ZonedDateTime
 import java.time.format.DateTimeFormatter
-import java.util.GregorianCalendar
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicReference
 
 class ExpoDeviceInfo : Record {
     @Field var cameraNum: Int = 0
@@ -31,16 +35,67 @@ class ExpoDeviceInfo : Record {
     @Field var status: Int = 0
 }
 
+class ExpoDeviceInfoResult : Record {
+    @Field var deviceSerial: String? = null
+    @Field var deviceInfo: ExpoDeviceInfo? = null
+    @Field var errorCode: String? = null
+    @Field var error: String? = null
+}
+
 class ExpoDeviceRecordFile : Record {
     @Field var startTime: Long = 0
     @Field var stopTime: Long = 0
 }
 
+// Columnar form of a record search: entry i of each array describes the same segment.
+class ExpoPackedRecordFiles : Record {
+    @Field var startTimes: DoubleArray = DoubleArray(0)
+    @Field var stopTimes: DoubleArray = DoubleArray(0)
+}
+
 class ExpoEzvizModule : Module() {
+  private val sdkExecutor = SdkExecutor()
+  private val singleFlight = SingleFlight()
+  private val deviceInfoCache = DeviceInfoCache()
+  // Conversions started by convertPsToMp4, by task id.
+  private val conversions = ConcurrentHashMap<String, PsConverter.Task>()
+  private val recordIndex by lazy { RecordIndexCache(File(appContext.cacheDirectory, "ezviz-record-index")) }
+
+  private val context: Context
+    get() = appContext.reactContext ?: throw IllegalStateException("React context is not available.")
+
+  private val downloadObserver = object : BackgroundDownloads.Observer {
+    override fun onProgress(event: Map<String, Any?>) {
+      sendEvent("onBackgroundDownloadProgress", event)
+    }
+
+    override fun onComplete(event: Map<String, Any?>) {
+      sendEvent("onBackgroundDownloadComplete", event)
+    }
+  }
+
   @RequiresApi(Build.VERSION_CODES.O)
   override fun definition() = ModuleDefinition {
     Name("ExpoEzviz")
 
+    Events("onDeviceInfo", "onBackgroundDownloadProgress", "onBackgroundDownloadComplete", "onConversionProgress")
+
+    // Download outcomes that finished while nothing was listening are replayed on subscribe, and
+    // replaying removes them from the job table, so only a completion listener may trigger it.
+    OnStartObserving("onBackgroundDownloadComplete") {
+      BackgroundDownloads.addObserver(context, downloadObserver)
+    }
+
+    OnStopObserving("onBackgroundDownloadComplete") {
+      BackgroundDownloads.removeObserver(downloadObserver)
+    }
+
+    OnDestroy {
+      // The JS runtime is gone, so nobody is waiting on queued requests any more.
+      sdkExecutor.shutdown()
+      BackgroundDownloads.removeObserver(downloadObserver)
+    }
+
     AsyncFunction("initSDK") { appKey: String, apiUrl: String? ->
       val application = appContext.activityProvider?.currentActivity?.application
         ?: throw IllegalStateException("Application context is not available.")
@@ -60,88 +115,208 @@ class ExpoEzvizModule : Module() {
       EZGlobalSDK.getInstance().setAccessToken(accessToken)
     }
 
-    AsyncFunction("searchRecordFileFromDevice") { deviceSerial: String, cameraNo: Int, beginTimeString: String, endTimeString: String, promise: Promise ->
-      val formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC)
+    AsyncFunction("setMaxConcurrentRequests") { maxConcurrentRequests: Int ->
+      sdkExecutor.setParallelism(maxConcurrentRequests)
+    }
 
-      val beginTime = try { ZonedDateTime.parse(beginTimeString, formatter) } catch (e: Exception) { null }
-      val endTime = try { ZonedDateTime.parse(endTimeString, formatter) } catch (e: Exception) { null }
+    AsyncFunction("cancelPendingRequests") { backgroundOnly: Boolean? ->
+      return@AsyncFunction sdkExecutor.cancelPending(if (backgroundOnly == true) SdkPriority.BACKGROUND else null)
+    }
 
-      if (beginTime == null || endTime == null) {
-        promise.reject("date-format-error", "Could not parse date strings. Expected format: yyyy-MM-dd HH:mm:ss", null)
-        return@AsyncFunction
+    AsyncFunction("searchRecordFileFromDevice") { deviceSerial: String, cameraNo: Int, beginTimeString: String, endTimeString: String, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("searchRecordFileFromDevice", jsPromise)
+      searchRecordFiles(deviceSerial, cameraNo, beginTimeString, endTimeString, promise) { it }
+    }
+
+    // Same search, but start and stop times come back as two parallel number arrays instead of one
+    // object per segment, which keeps busy timelines cheap to send across the bridge.
+    AsyncFunction("searchRecordFileFromDevicePacked") { deviceSerial: String, cameraNo: Int, beginTimeString: String, endTimeString: String, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("searchRecordFileFromDevicePacked", jsPromise)
+      searchRecordFiles(deviceSerial, cameraNo, beginTimeString, endTimeString, promise) { records ->
+        ExpoPackedRecordFiles().apply {
+          this.startTimes = DoubleArray(records.size) { records[it].startTime.toDouble() }
+          this.stopTimes = DoubleArray(records.size) { records[it].stopTime.toDouble() }
+        }
       }
+    }
 
-      val timeIntervalSeconds = Duration.between(beginTime, endTime).seconds
-      if (timeIntervalSeconds > 24 * 60 * 60) {
-        promise.reject("query-window-error", "The time window for querying records cannot exceed 24 hours.", null)
-        return@AsyncFunction
+    AsyncFunction("clearRecordIndexCache") { deviceSerial: String?, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("clearRecordIndexCache", jsPromise)
+      sdkExecutor.execute(promise) {
+        recordIndex.clear(deviceSerial)
+        promise.resolve(null)
       }
+    }
 
-      val beginCalendar = GregorianCalendar.from(beginTime)
-      val endCalendar = GregorianCalendar.from(endTime)
+    AsyncFunction("getMetrics") {
+      return@AsyncFunction EzvizMetrics.snapshot()
+    }
 
-      Thread {
-        try {
-          val serializableRecords = EZGlobalSDK.getInstance()
-            .searchRecordFileFromDevice(deviceSerial, cameraNo, beginCalendar, endCalendar)
-            .map { record ->
-                ExpoDeviceRecordFile().apply {
-                    this.startTime = record.startTime?.timeInMillis ?: 0
-                    this.stopTime = record.stopTime?.timeInMillis ?: 0
-                }
-            }
-          promise.resolve(serializableRecords)
-        } catch (e: BaseException) {
-          promise.reject("search-error", e.localizedMessage, e)
+    AsyncFunction("resetMetrics") {
+      EzvizMetrics.reset()
+    }
+
+    AsyncFunction("setMetricsEnabled") { enabled: Boolean ->
+      EzvizMetrics.isEnabled = enabled
+    }
+
+    AsyncFunction("configurePlayerPool") { maxParkedPlayers: Int, maxLiveStreams: Int ->
+      PlayerPool.maxParkedPlayers = maxOf(0, maxParkedPlayers)
+      PlayerPool.maxLiveStreams = maxOf(0, maxLiveStreams)
+      PlayerPool.trimAsync()
+    }
+
+    AsyncFunction("clearPlayerPool") {
+      PlayerPool.clear()
+    }
+
+    AsyncFunction("setMaxConcurrentDownloads") { maxConcurrentDownloads: Int, maxStreamsPerDevice: Int? ->
+      DownloadManager.maxConcurrentDownloads = maxConcurrentDownloads
+      maxStreamsPerDevice?.let { DownloadManager.maxStreamsPerDevice = it }
+    }
+
+    AsyncFunction("startBackgroundDownload") { deviceSerial: String, cameraNo: Int, verifyCode: String, recordFile: ExpoDeviceRecordFile, saveToGallery: Boolean?, segments: Int? ->
+      val outputDirectory = BackgroundDownloads.outputDirectory(context)
+        ?: throw IllegalStateException("Could not create download directory.")
+      val request = DownloadManager.Request(
+        deviceSerial, cameraNo, verifyCode, BackgroundDownloads.recordFile(recordFile.startTime, recordFile.stopTime), outputDirectory, saveToGallery ?: true,
+        segments ?: 1
+      )
+      return@AsyncFunction BackgroundDownloads.start(context, request, null)
+    }
+
+    AsyncFunction("cancelBackgroundDownload") { jobId: String ->
+      return@AsyncFunction BackgroundDownloads.cancel(jobId)
+    }
+
+    AsyncFunction("getBackgroundDownloads") {
+      return@AsyncFunction BackgroundDownloads.list(context)
+    }
+
+    // Converts .ps recordings to MP4 files next to them. Resolves once every file has finished,
+    // with one result per path in the given order; progress for the batch arrives as
+    // onConversionProgress.
+    AsyncFunction("convertPsToMp4") { paths: List<String>, verifyCode: String?, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("convertPsToMp4", jsPromise)
+      val files = paths.map { path ->
+        val source = File(path)
+        source to File(source.parentFile, source.nameWithoutExtension + ".mp4")
+      }
+      val taskIds = ConcurrentHashMap.newKeySet<String>()
+      PsConverter.submitBatch(
+        files,
+        verifyCode,
+        onQueued = { task ->
+          // Registered before the batch can complete, so onComplete always finds them.
+          taskIds.add(task.id)
+          conversions[task.id] = task
+        },
+        onProgress = { progress -> sendEvent("onConversionProgress", mapOf("sources" to paths, "progress" to progress)) },
+        onComplete = { codes ->
+          taskIds.forEach { conversions.remove(it) }
+          val results = codes.mapIndexed { index, code ->
+            mapOf(
+              "source" to paths[index],
+              "path" to if (code == null) files[index].second.absolutePath else null,
+              "code" to code
+            )
+          }
+          promise.resolve(results)
         }
-      }.start()
+      )
+    }
+
+    // Cancels every running or queued conversion of the file, whichever batch it belongs to.
+    AsyncFunction("cancelConversion") { path: String ->
+      val tasks = conversions.values.filter { it.source.path == File(path).path }
+      tasks.forEach { PsConverter.cancel(it) }
+      return@AsyncFunction tasks.isNotEmpty()
+    }
+
+    AsyncFunction("setMaxConcurrentConversions") { maxConcurrentConversions: Int ->
+      PsConverter.maxParallel = maxConcurrentConversions
+    }
+
+    // Call after initSDK and setAccessToken: restarts downloads cut off by the process dying.
+    AsyncFunction("resumeBackgroundDownloads") {
+      return@AsyncFunction BackgroundDownloads.resume(context)
     }
 
-    AsyncFunction("addDevice") { deviceSerial: String, verifyCode: String, promise: Promise ->
-      Thread {
+    AsyncFunction("configureSnapshotCache") { maxWidth: Int, maxHeight: Int, maxMemoryBytes: Int ->
+      SnapshotCache.maxWidth = maxOf(1, maxWidth)
+      SnapshotCache.maxHeight = maxOf(1, maxHeight)
+      SnapshotCache.setMaxMemoryBytes(maxMemoryBytes)
+    }
+
+    // Path and capture time of the last persisted snapshot, or null if the camera has none yet.
+    AsyncFunction("getLastSnapshot") { deviceSerial: String, cameraNo: Int ->
+      val key = PlayerPool.Key(deviceSerial, cameraNo)
+      val file = SnapshotCache.get(key)?.file ?: SnapshotCache.fileFor(appContext.cacheDirectory, key)
+      if (!file.exists()) return@AsyncFunction null
+      mapOf("path" to file.absolutePath, "capturedAt" to file.lastModified().toDouble())
+    }
+
+    AsyncFunction("clearSnapshotCache") { deviceSerial: String?, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("clearSnapshotCache", jsPromise)
+      sdkExecutor.execute(promise) {
+        SnapshotCache.clear(appContext.cacheDirectory, deviceSerial)
+        promise.resolve(null)
+      }
+    }
+
+    AsyncFunction("addDevice") { deviceSerial: String, verifyCode: String, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("addDevice", jsPromise)
+      sdkExecutor.execute(promise) {
         try {
           EZGlobalSDK.getInstance().addDevice(deviceSerial, verifyCode)
           promise.resolve(null)
         } catch (e: BaseException) {
           promise.reject("add-device-error", e.localizedMessage, e)
         }
-      }.start()
+      }
     }
 
-    AsyncFunction("deleteDevice") { deviceSerial: String, promise: Promise ->
-      Thread {
+    AsyncFunction("deleteDevice") { deviceSerial: String, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("deleteDevice", jsPromise)
+      sdkExecutor.execute(promise) {
         try {
           EZGlobalSDK.getInstance().deleteDevice(deviceSerial)
+          deviceInfoCache.invalidate(deviceSerial)
           promise.resolve(null)
         } catch (e: BaseException) {
           promise.reject("delete-device-error", e.localizedMessage, e)
         }
-      }.start()
+      }
     }
 
-    AsyncFunction("setDeviceName") { deviceName: String, deviceSerial: String, promise: Promise ->
-      Thread {
+    AsyncFunction("setDeviceName") { deviceName: String, deviceSerial: String, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("setDeviceName", jsPromise)
+      sdkExecutor.execute(promise) {
         try {
           EZGlobalSDK.getInstance().setDeviceName(deviceSerial, deviceName)
+          deviceInfoCache.invalidate(deviceSerial)
           promise.resolve(null)
         } catch (e: BaseException) {
           promise.reject("set-device-name-error", e.localizedMessage, e)
         }
-      }.start()
+      }
     }
 
-    AsyncFunction("setDeviceEncryptStatus") { deviceSerial: String, verifyCode: String, encryptStatus: Boolean, promise: Promise ->
-      Thread {
+    AsyncFunction("setDeviceEncryptStatus") { deviceSerial: String, verifyCode: String, encryptStatus: Boolean, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("setDeviceEncryptStatus", jsPromise)
+      sdkExecutor.execute(promise) {
         try {
           EZGlobalSDK.getInstance().setDeviceEncryptStatus(deviceSerial, verifyCode, encryptStatus)
+          deviceInfoCache.invalidate(deviceSerial)
           promise.resolve(null)
         } catch (e: BaseException) {
           promise.reject("set-encrypt-status-error", e.localizedMessage, e)
         }
-      }.start()
+      }
     }
 
-    AsyncFunction("setDefence") { deviceSerial: String, defenceType: Int, promise: Promise ->
+    AsyncFunction("setDefence") { deviceSerial: String, defenceType: Int, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("setDefence", jsPromise)
       val defenceStatus = when (defenceType) {
         0 -> EZConstants.EZDefenceStatus.EZDefence_IPC_CLOSE
         1 -> EZConstants.EZDefenceStatus.EZDefence_IPC_OPEN
@@ -155,39 +330,83 @@ class ExpoEzvizModule : Module() {
         return@AsyncFunction
       }
 
-      Thread {
+      sdkExecutor.execute(promise) {
         try {
           EZGlobalSDK.getInstance().setDefence(deviceSerial, defenceStatus)
+          deviceInfoCache.invalidate(deviceSerial)
           promise.resolve(null)
         } catch (e: BaseException) {
           promise.reject("set-defence-error", e.localizedMessage, e)
         }
-      }.start()
+      }
     }
 
-    AsyncFunction("getDeviceInfo") { deviceSerial: String, promise: Promise ->
-      Thread {
-        try {
-          val deviceInfo = EZGlobalSDK.getInstance().getDeviceInfo(deviceSerial)
-          Log.d("ExpoEzvizModule", "deviceInfo: $deviceInfo")
-          val expoDeviceInfo = ExpoDeviceInfo().apply {
-            this.cameraNum = deviceInfo.cameraNum
-            this.category = deviceInfo.category
-            this.defence = deviceInfo.defence
-            this.detectorNum = deviceInfo.detectorNum
-            this.deviceCover = deviceInfo.deviceCover
-            this.deviceName = deviceInfo.deviceName
-            this.deviceSerial = deviceInfo.deviceSerial
-            this.deviceType = deviceInfo.deviceType
-            this.deviceVersion = deviceInfo.deviceVersion
-            this.isEncrypt = deviceInfo.isEncrypt == 1
-            this.status = deviceInfo.status
+    // Served from the cache when possible. Stale entries are returned immediately and refreshed
+    // in the background so the next call sees the new values.
+    AsyncFunction("getDeviceInfo") { deviceSerial: String, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("getDeviceInfo", jsPromise)
+      val cached = deviceInfoCache.get(deviceSerial)
+      if (cached != null) {
+        promise.resolve(cached.deviceInfo)
+        if (cached.isStale) {
+          loadDeviceInfo(deviceSerial, SdkPriority.BACKGROUND) { result ->
+            result.onFailure { Log.w("ExpoEzvizModule", "Background refresh of $deviceSerial failed: ${it.localizedMessage}") }
           }
-          promise.resolve(expoDeviceInfo)
-        } catch (e: BaseException) {
-          promise.reject("get-device-info-error", e.localizedMessage, e)
         }
-      }.start()
+        return@AsyncFunction
+      }
+
+      loadDeviceInfo(deviceSerial, SdkPriority.USER) { result ->
+        result
+          .onSuccess { promise.resolve(it) }
+          .onFailure { rejectSdkFailure(promise, "get-device-info-error", it) }
+      }
+    }
+
+    AsyncFunction("setDeviceInfoCacheTtl") { ttlMillis: Double ->
+      deviceInfoCache.ttlMs = ttlMillis.toLong()
+      if (deviceInfoCache.ttlMs <= 0) {
+        deviceInfoCache.clear()
+      }
+    }
+
+    AsyncFunction("invalidateDeviceInfoCache") { deviceSerial: String? ->
+      if (deviceSerial != null) {
+        deviceInfoCache.invalidate(deviceSerial)
+      } else {
+        deviceInfoCache.clear()
+      }
+    }
+
+    // Fans out over the SDK and emits onDeviceInfo as each device completes, so a fleet screen
+    // can render rows as they arrive. A failing serial is reported in its own result instead of
+    // rejecting the whole batch.
+    AsyncFunction("getDeviceInfos") { deviceSerials: List<String>, jsPromise: Promise ->
+      val promise = EzvizMetrics.track("getDeviceInfos", jsPromise)
+      val results = arrayOfNulls<ExpoDeviceInfoResult>(deviceSerials.size)
+      sdkExecutor.fanOut(
+        deviceSerials,
+        MAX_PARALLEL_DEVICE_INFO,
+        SdkPriority.BACKGROUND,
+        { deviceSerial ->
+          val generation = deviceInfoCache.generation(deviceSerial)
+          fetchDeviceInfo(deviceSerial).also { deviceInfoCache.put(deviceSerial, it, generation) }
+        },
+        { index, result ->
+          val itemResult = ExpoDeviceInfoResult().apply {
+            this.deviceSerial = deviceSerials[index]
+            result
+              .onSuccess { this.deviceInfo = it }
+              .onFailure { e ->
+                this.errorCode = if (e is CancellationException) "request-cancelled" else "get-device-info-error"
+                this.error = e.localizedMessage
+              }
+          }
+          results[index] = itemResult
+          sendEvent("onDeviceInfo", mapOf("index" to index, "result" to itemResult))
+        },
+        { promise.resolve(results.toList()) }
+      )
     }
 
     View(ExpoEzvizView::class) {
@@ -207,30 +426,89 @@ class ExpoEzvizModule : Module() {
         view.autoplay = autoplay ?: false
       }
 
+      Prop("keepStreamAliveMs") { view: ExpoEzvizView, keepStreamAliveMs: Int? ->
+        view.keepStreamAliveMs = (keepStreamAliveMs ?: 0).toLong()
+      }
+
+      Prop("videoQuality") { view: ExpoEzvizView, videoQuality: String? ->
+        view.videoQuality = videoQuality
+      }
+
+      Prop("adaptiveVideoLevel") { view: ExpoEzvizView, adaptiveVideoLevel: Boolean? ->
+        view.adaptiveVideoLevel = adaptiveVideoLevel ?: false
+      }
+
+      Prop("decodeMode") { view: ExpoEzvizView, decodeMode: String? ->
+        view.decodeMode = decodeMode ?: "software"
+      }
+
+      Prop("playbackProgressIntervalMs") { view: ExpoEzvizView, playbackProgressIntervalMs: Int? ->
+        view.playbackProgressIntervalMs = (playbackProgressIntervalMs ?: 1000).toLong()
+      }
+
+      Prop("playbackProgressOnChangeOnly") { view: ExpoEzvizView, playbackProgressOnChangeOnly: Boolean? ->
+        view.playbackProgressOnChangeOnly = playbackProgressOnChangeOnly ?: true
+      }
+
+      Prop("showPoster") { view: ExpoEzvizView, showPoster: Boolean? ->
+        view.showPoster = showPoster ?: false
+      }
+
+      Prop("snapshotIntervalMs") { view: ExpoEzvizView, snapshotIntervalMs: Int? ->
+        view.snapshotIntervalMs = (snapshotIntervalMs ?: 0).toLong()
+      }
+
+      Prop("suspendWhenHidden") { view: ExpoEzvizView, suspendWhenHidden: String? ->
+        // "audioOnly" was accepted before; EZPlayer.setAudioOnly only affects RTMP streams, so it
+        // now stops the stream like "stop".
+        view.suspendWhenHidden = if (suspendWhenHidden == "audioOnly") "stop" else suspendWhenHidden ?: "off"
+      }
+
+      Prop("playerMessageCodes") { view: ExpoEzvizView, playerMessageCodes: List<Int>? ->
+        view.playerMessageCodes = playerMessageCodes?.toSet()
+      }
+
+      Prop("eventBatchIntervalMs") { view: ExpoEzvizView, eventBatchIntervalMs: Int? ->
+        view.eventBatchIntervalMs = (eventBatchIntervalMs ?: 0).toLong()
+      }
+
+      Prop("seekDebounceMs") { view: ExpoEzvizView, seekDebounceMs: Int? ->
+        view.seekDebounceMs = (seekDebounceMs ?: SeekController.DEFAULT_DEBOUNCE_MS.toInt()).toLong()
+      }
+
       Prop("defaultSoundOn") { view: ExpoEzvizView, defaultSoundOn: Boolean? ->
         view.setDefaultSoundOn(defaultSoundOn)
       }
 
-      Events("onLoad", "onPlayFailed", "onPictureCaptured", "onDownloadProgress", "onDownloadSuccess", "onDownloadError", "onPlayerMessage", "onPlaybackProgress")
+      Events("onLoad", "onPlayFailed", "onPictureCaptured", "onDownloadProgress", "onDownloadSuccess", "onDownloadError", "onPlayerMessage", "onPlaybackProgress", "onPerformance", "onSuspendStateChange", "onVideoLevelChange", "onDecoderSelected", "onSnapshot", "onPlayerEvents", "onSeekComplete")
+
+      AsyncFunction("capturePicture") { view: ExpoEzvizView, options: ExpoCaptureOptions? ->
+        view.capturePicture(options)
+      }
 
-      AsyncFunction("capturePicture") { view: ExpoEzvizView ->
-        view.capturePicture()
+      AsyncFunction("captureSnapshot") { view: ExpoEzvizView ->
+        view.captureSnapshot()
       }
 
-      AsyncFunction("startPlayback") { view: ExpoEzvizView, recordFileDict: Map<String, Any> ->
-        return@AsyncFunction view.startPlayback(recordFileDict)
+      // Player calls run on the view's player thread; these resolve from there with the SDK's result.
+      AsyncFunction("startPlayback") { view: ExpoEzvizView, recordFileDict: Map<String, Any>, promise: Promise ->
+        view.startPlayback(recordFileDict, promise)
       }
 
-      AsyncFunction("stopPlayback") { view: ExpoEzvizView ->
-        return@AsyncFunction view.stopPlayback()
+      AsyncFunction("stopPlayback") { view: ExpoEzvizView, promise: Promise ->
+        view.stopPlayback(promise)
       }
 
       AsyncFunction("stopLocalRecord") { view: ExpoEzvizView ->
         view.stopLocalRecord()
       }
 
-      AsyncFunction("downloadRecordFile") { view: ExpoEzvizView, recordFileDict: Map<String, Any> ->
-        view.downloadRecordFile(recordFileDict)
+      AsyncFunction("downloadRecordFile") { view: ExpoEzvizView, recordFileDict: Map<String, Any>, segments: Int? ->
+        view.downloadRecordFile(recordFileDict, segments ?: 1)
+      }
+
+      AsyncFunction("cancelDownload") { view: ExpoEzvizView, jobId: String ->
+        view.cancelDownload(jobId)
       }
 
       AsyncFunction("openSound") { view: ExpoEzvizView ->
@@ -249,12 +527,12 @@ class ExpoEzvizModule : Module() {
         view.stopRealPlay()
       }
 
-      AsyncFunction("pausePlayback") { view: ExpoEzvizView ->
-        return@AsyncFunction view.pausePlayback()
+      AsyncFunction("pausePlayback") { view: ExpoEzvizView, promise: Promise ->
+        view.pausePlayback(promise)
       }
 
-      AsyncFunction("resumePlayback") { view: ExpoEzvizView ->
-        return@AsyncFunction view.resumePlayback()
+      AsyncFunction("resumePlayback") { view: ExpoEzvizView, promise: Promise ->
+        view.resumePlayback(promise)
       }
 
       AsyncFunction("seekPlayback") { view: ExpoEzvizView, offsetTimestamp: Double ->
@@ -262,9 +540,136 @@ class ExpoEzvizModule : Module() {
       }
 
       // Renamed to match iOS for a unified API
-      AsyncFunction("startLocalRecord") { view: ExpoEzvizView, path: String ->
-        return@AsyncFunction view.startLocalRecordWithFile(path)
+      AsyncFunction("startLocalRecord") { view: ExpoEzvizView, path: String, promise: Promise ->
+        view.startLocalRecordWithFile(path, promise)
+      }
+    }
+
+    View(ExpoEzvizGridView::class) {
+      Prop("cameras") { view: ExpoEzvizGridView, cameras: List<ExpoGridCamera> ->
+        view.setCameras(cameras)
+      }
+
+      Prop("columns") { view: ExpoEzvizGridView, columns: Int? ->
+        view.columns = columns ?: 0
+      }
+
+      Prop("maxActiveStreams") { view: ExpoEzvizGridView, maxActiveStreams: Int? ->
+        view.maxActiveStreams = maxActiveStreams ?: ExpoEzvizGridView.DEFAULT_MAX_ACTIVE_STREAMS
+      }
+
+      Prop("highQualityMinWidth") { view: ExpoEzvizGridView, highQualityMinWidth: Int? ->
+        view.highQualityMinWidth = highQualityMinWidth ?: ExpoEzvizGridView.DEFAULT_HIGH_QUALITY_MIN_WIDTH_DP
       }
+
+      Events("onTileStateChange")
+    }
+  }
+
+  private fun searchRecordFiles(
+    deviceSerial: String,
+    cameraNo: Int,
+    beginTimeString: String,
+    endTimeString: String,
+    promise: Promise,
+    transform: (List<ExpoDeviceRecordFile>) -> Any
+  ) {
+    val formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneOffset.UTC)
+
+    val beginTime = try { ZonedDateTime.parse(beginTimeString, formatter) } catch (e: Exception) { null }
+    val endTime = try { ZonedDateTime.parse(endTimeString, formatter) } catch (e: Exception) { null }
+
+    if (beginTime == null || endTime == null) {
+      promise.reject("date-format-error", "Could not parse date strings. Expected format: yyyy-MM-dd HH:mm:ss", null)
+      return
+    }
+
+    val timeIntervalSeconds = Duration.between(beginTime, endTime).seconds
+    if (timeIntervalSeconds > RecordFileSearch.MAX_WINDOW_DAYS * 24 * 60 * 60) {
+      promise.reject("query-window-error", "The time window for querying records cannot exceed ${RecordFileSearch.MAX_WINDOW_DAYS} days.", null)
+      return
     }
+
+    // Identical searches already in flight share one result instead of hitting the SD card again.
+    val key = "searchRecordFileFromDevice:$deviceSerial:$cameraNo:$beginTimeString:$endTimeString"
+    singleFlight.execute<List<ExpoDeviceRecordFile>>(key, { result ->
+      result
+        .onSuccess { promise.resolve(transform(it)) }
+        .onFailure { rejectSdkFailure(promise, "search-error", it) }
+    }) { complete ->
+      // Searches run per UTC day so each slice fits the SDK's 24 hour limit and can be served
+      // from the on-disk record index.
+      val days = RecordFileSearch.daysInWindow(beginTime, endTime)
+      val dayResults = arrayOfNulls<List<ExpoDeviceRecordFile>>(days.size)
+      val failure = AtomicReference<Throwable?>(null)
+      sdkExecutor.fanOut(
+        days,
+        RecordFileSearch.MAX_PARALLEL_SLICES,
+        SdkPriority.USER,
+        { day ->
+          recordIndex.recordsForDay(deviceSerial, cameraNo, day) { from, to ->
+            RecordFileSearch.searchSlice(deviceSerial, cameraNo, from, to)
+          }
+        },
+        { index, result ->
+          result
+            .onSuccess { dayResults[index] = it }
+            .onFailure { failure.compareAndSet(null, it) }
+        },
+        {
+          val error = failure.get()
+          if (error != null) {
+            complete(Result.failure(error))
+          } else {
+            val merged = RecordFileSearch.mergeRecords(dayResults.flatMap { it.orEmpty() })
+            complete(Result.success(RecordFileSearch.overlapping(merged, beginTime, endTime)))
+          }
+        }
+      )
+    }
+  }
+
+  // USER for a caller waiting on a cache miss, BACKGROUND for a stale-while-revalidate refresh.
+  private fun loadDeviceInfo(deviceSerial: String, priority: SdkPriority, onResult: (Result<ExpoDeviceInfo>) -> Unit) {
+    // Keyed by generation too: a call made after setDeviceName or setDefence must not join a
+    // fetch that started before the change.
+    val generation = deviceInfoCache.generation(deviceSerial)
+    singleFlight.execute("getDeviceInfo:$deviceSerial:$generation", onResult) { complete ->
+      sdkExecutor.execute(priority, { complete(Result.failure(CancellationException())) }) {
+        val result = runCatching { fetchDeviceInfo(deviceSerial) }
+        result.onSuccess { deviceInfoCache.put(deviceSerial, it, generation) }
+        complete(result)
+      }
+    }
+  }
+
+  private fun rejectSdkFailure(promise: Promise, code: String, error: Throwable) {
+    if (error is CancellationException) {
+      promise.reject("request-cancelled", "The request was cancelled before it started.", null)
+    } else {
+      promise.reject(code, error.localizedMessage, error)
+    }
+  }
+
+  private fun fetchDeviceInfo(deviceSerial: String): ExpoDeviceInfo {
+    val deviceInfo = EZGlobalSDK.getInstance().getDeviceInfo(deviceSerial)
+    Log.d("ExpoEzvizModule", "deviceInfo: $deviceInfo")
+    return ExpoDeviceInfo().apply {
+      this.cameraNum = deviceInfo.cameraNum
+      this.category = deviceInfo.category
+      this.defence = deviceInfo.defence
+      this.detectorNum = deviceInfo.detectorNum
+      this.deviceCover = deviceInfo.deviceCover
+      this.deviceName = deviceInfo.deviceName
+      this.deviceSerial = deviceInfo.deviceSerial
+      this.deviceType = deviceInfo.deviceType
+      this.deviceVersion = deviceInfo.deviceVersion
+      this.isEncrypt = deviceInfo.isEncrypt == 1
+      this.status = deviceInfo.status
+    }
+  }
+
+  companion object {
+    private const val MAX_PARALLEL_DEVICE_INFO = 4
   }
 }
@@ -1,37 +1,58 @@
 package com.poseidon
 
-import android.content.ContentValues
 import android.content.Context
 import android.graphics.Bitmap
-import android.os.Build
-import android.os.Environment
+import android.graphics.Rect
 import android.os.Handler
 import android.os.Looper
 import android.os.Message
-import android.provider.MediaStore
 import android.util.Log
 import android.view.SurfaceHolder
 import android.view.SurfaceView
+import android.view.ViewTreeObserver
+import android.widget.ImageView
 import com.videogo.errorlayer.ErrorInfo
 import com.videogo.openapi.EZConstants
 import com.videogo.openapi.EZOpenSDK
-import com.videogo.openapi.EZOpenSDKListener
 import com.videogo.openapi.EZPlayer
 import com.videogo.openapi.bean.EZDeviceRecordFile
-import com.videogo.stream.EZDeviceStreamDownload
-import com.videogo.util.VideoTransUtil
 import expo.modules.kotlin.AppContext
+import expo.modules.kotlin.Promise
+import expo.modules.kotlin.records.Field
+import expo.modules.kotlin.records.Record
 import expo.modules.kotlin.viewevent.EventDispatcher
 import expo.modules.kotlin.views.ExpoView
 import java.io.File
-import java.io.IOException
 import java.util.Calendar
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+
+class ExpoCaptureOptions : Record {
+    @Field var saveToGallery: Boolean = true
+    @Field var streamId: Int = 0
+}
 
 class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context, appContext) {
 
     private val playerView = SurfaceView(context)
+    private val posterView = ImageView(context).apply {
+        scaleType = ImageView.ScaleType.CENTER_CROP
+        visibility = GONE
+    }
+    private var posterBitmap: Bitmap? = null
+    // Player state below is owned by this view's player thread (see playerHandler); only surface
+    // binding and the poster are handled on the main thread.
+    @Volatile
     var player: EZPlayer? = null
-    private var downloader: EZDeviceStreamDownload? = null
+    private var playerKey: PlayerPool.Key? = null
+    private var isRealPlaying: Boolean = false
+    // Set from startRealPlay until the stream is stopped or fails, so a stream that is still
+    // connecting can be stopped too; isRealPlaying only turns on at MSG_REALPLAY_PLAY_SUCCESS.
+    private var isStreamRequested: Boolean = false
+    private var isPlaybackActive: Boolean = false
+    private var isPlaybackPaused: Boolean = false
+    // Ids of downloads started from this view.
+    private val downloadJobs = ConcurrentHashMap.newKeySet<String>()
 
     // Props
     var deviceSerial: String? = null
@@ -52,25 +73,113 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
 
     var verifyCode: String? = null
     var autoplay: Boolean = false
+    // How long a live stream keeps running after the view detaches, so returning to the screen
+    // can pick it up without a new stream setup. 0 stops it immediately but still pools the player.
+    var keepStreamAliveMs: Long = 0
+    // "performance" starts live streams at the lowest resolution, "quality" at the highest.
+    var videoQuality: String? = null
+    // Follow the SDK's network-driven video level suggestions while streaming live.
+    var adaptiveVideoLevel: Boolean = false
+    // "software" (the SDK default), "hardware", or "auto": hardware first, falling back to
+    // software when a hardware-decoded stream fails to start.
+    var decodeMode: String = "software"
+    // How often (ms) playback progress is polled; 0 turns onPlaybackProgress off.
+    var playbackProgressIntervalMs: Long = DEFAULT_PROGRESS_INTERVAL_MS
+        set(value) {
+            field = value
+            onPlayerThread { if (isPlaybackActive) startPlaybackTimer() }
+        }
+    // Only send onPlaybackProgress when the playback time has moved since the last event.
+    var playbackProgressOnChangeOnly: Boolean = true
+    // Show the camera's last cached frame until the stream renders its first frame.
+    var showPoster: Boolean = false
+    // Refresh the camera's cached snapshot this often while streaming; 0 disables it.
+    var snapshotIntervalMs: Long = 0
+        set(value) {
+            field = value
+            restartSnapshotTimer()
+        }
+    // Player message codes forwarded to JS; null forwards every code.
+    var playerMessageCodes: Set<Int>? = null
+        set(value) {
+            field = value
+            onPlayerThread { eventBatcher.codes = value }
+        }
+    // When above 0, player messages and playback progress are collected for this many ms and sent
+    // together as one onPlayerEvents event instead of onPlayerMessage/onPlaybackProgress.
+    var eventBatchIntervalMs: Long = 0
+        set(value) {
+            field = value
+            onPlayerThread { eventBatcher.intervalMs = value }
+        }
+    // How long seekPlayback waits for a newer target before seeking; only the last one is sent.
+    var seekDebounceMs: Long = SeekController.DEFAULT_DEBOUNCE_MS
+        set(value) {
+            field = value
+            onPlayerThread { seekController.debounceMs = value }
+        }
+    // What to do with the stream while the view is off screen or the app is in the background:
+    // "off" keeps streaming, "stop" stops live video (and pauses playback).
+    var suspendWhenHidden: String = "off"
+        set(value) {
+            field = value
+            if (value == "off") onPlayerThread { resumeStreaming() } else checkVisibility()
+        }
     private var hasAutoplayStarted: Boolean = false
     private var defaultSoundOn: Boolean? = null
     private var isSoundOn: Boolean = false // Android SDK defaults to sound off
 
+    // Start times (System.nanoTime) of operations that complete via player messages, for EzvizMetrics.
+    private var realPlayStartedAt = 0L
+    private var playbackStartedAt = 0L
+
+    private var isHardwareDecoding = false
+    private var isDecodeFallback = false
+    private var lastRecordFile: EZDeviceRecordFile? = null
+
     // Event Dispatchers
     val onLoad by EventDispatcher()
     val onPlayFailed by EventDispatcher()
     val onPictureCaptured by EventDispatcher()
+    val onDownloadProgress by EventDispatcher()
     val onDownloadSuccess by EventDispatcher()
     val onDownloadError by EventDispatcher()
     val onPlayerMessage by EventDispatcher()
     val onPlaybackProgress by EventDispatcher()
-
-    private val playerHandler = object : Handler(Looper.getMainLooper()) {
+    val onPerformance by EventDispatcher()
+
+    val onSuspendStateChange by EventDispatcher()
+
+    val onVideoLevelChange by EventDispatcher()
+    val onDecoderSelected by EventDispatcher()
+    val onSnapshot by EventDispatcher()
+    val onPlayerEvents by EventDispatcher()
+    val onSeekComplete by EventDispatcher()
+
+    private val startupTrace = PlaybackStartupTrace()
+    private val videoLevel = AdaptiveVideoLevel()
+
+    private enum class SuspendedStream { LIVE, PLAYBACK }
+    @Volatile
+    private var suspendedStream: SuspendedStream? = null
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val visibleRect = Rect()
+    private val suspendRunnable = Runnable { onPlayerThread { suspendStreaming() } }
+    private val scrollListener = ViewTreeObserver.OnScrollChangedListener { checkVisibility() }
+
+    // Receives the SDK's player messages and runs every player call this view makes, on a
+    // background looper shared with a few other views instead of the main looper.
+    private val playerHandler = object : Handler(PlayerThreads.nextLooper()) {
         override fun handleMessage(msg: Message) {
             super.handleMessage(msg)
             when (msg.what) {
                 EZConstants.EZRealPlayConstants.MSG_REALPLAY_PLAY_SUCCESS -> {
                     Log.d("ExpoEzvizView", "onPlaySuccess")
+                    isRealPlaying = true
+                    reportDecoder()
+                    recordPlayerOperation("startRealPlay", realPlayStartedAt, null)
+                    if (startupTrace.markPlaySuccess()) reportStartupTrace()
+                    realPlayStartedAt = 0L
                     // Android SDK defaults to sound OFF. Only open it if requested.
                     if (defaultSoundOn == true) {
                         openSound()
@@ -79,12 +188,22 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
                 }
                 EZConstants.EZRealPlayConstants.MSG_REALPLAY_PLAY_FAIL -> {
                     val errorInfo = msg.obj as? ErrorInfo
+                    if (retryWithSoftwareDecode(errorInfo, isLive = true)) return
                     val errorMessage = errorInfo?.description ?: "Unknown error"
                     Log.e("ExpoEzvizView", "Play failed with error: $errorMessage")
+                    isRealPlaying = false
+                    isStreamRequested = false
+                    recordPlayerOperation("startRealPlay", realPlayStartedAt, "play-failed-${errorInfo?.errorCode ?: -1}")
+                    reportStartupTrace(errorMessage)
+                    realPlayStartedAt = 0L
                     onPlayFailed(mapOf("error" to errorMessage))
                 }
                 EZConstants.EZPlaybackConstants.MSG_REMOTEPLAYBACK_PLAY_SUCCUSS -> {
                     Log.d("ExpoEzvizView", "onPlaySuccess")
+                    recordPlayerOperation("startPlayback", playbackStartedAt, null)
+                    playbackStartedAt = 0L
+                    reportDecoder()
+                    if (startupTrace.markPlaySuccess()) reportStartupTrace()
                     // Android SDK defaults to sound OFF. Only open it if requested.
                     if (defaultSoundOn == true) {
                         openSound()
@@ -94,37 +213,71 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
                 }
                 EZConstants.EZPlaybackConstants.MSG_REMOTEPLAYBACK_PLAY_FAIL -> {
                     val errorInfo = msg.obj as? ErrorInfo
+                    if (retryWithSoftwareDecode(errorInfo, isLive = false)) return
                     val errorMessage = errorInfo?.description ?: "Unknown error"
                     Log.e("ExpoEzvizView", "Play failed with error: $errorMessage")
+                    recordPlayerOperation("startPlayback", playbackStartedAt, "play-failed-${errorInfo?.errorCode ?: -1}")
+                    playbackStartedAt = 0L
+                    reportStartupTrace(errorMessage)
                     onPlayFailed(mapOf("error" to errorMessage))
                 }
+                EZConstants.EZPlaybackConstants.MSG_REMOTEPLAYBACK_PLAY_FINISH -> {
+                    // Nothing more to report once the record file has played out.
+                    stopPlaybackTimer()
+                    reportPlayerMessage(msg.what)
+                }
+                EZConstants.EZRealPlayConstants.MSG_VIDEO_LEVEL_AUTO_IMPROVE -> {
+                    if (adaptiveVideoLevel && isRealPlaying) videoLevel.onImproveSuggested()?.let { switchVideoLevel(it, "improve") }
+                    reportPlayerMessage(msg.what)
+                }
+                EZConstants.EZRealPlayConstants.MSG_VIDEO_LEVEL_AUTO_REDUCE -> {
+                    if (adaptiveVideoLevel && isRealPlaying) videoLevel.onReduceSuggested()?.let { switchVideoLevel(it, "reduce") }
+                    reportPlayerMessage(msg.what)
+                }
+                EZConstants.EZRealPlayConstants.MSG_VIDEO_SIZE_CHANGED -> {
+                    if (startupTrace.markFirstFrame()) reportStartupTrace()
+                    mainHandler.post { hidePoster() }
+                    reportPlayerMessage(msg.what)
+                }
 
                 else -> {
                      Log.d("ExpoEzvizView", "Received player message: ${msg.what}")
-                    onPlayerMessage(mapOf("messageCode" to msg.what))
+                    reportPlayerMessage(msg.what)
                 }
             }
         }
     }
 
-    private val playbackTimerHandler = Handler(Looper.getMainLooper())
+    private val eventBatcher = PlayerEventBatcher(playerHandler) { onPlayerEvents(it) }
+    private val seekController = SeekController(playerHandler, { player }) { onSeekComplete(it) }
+
+    private var lastProgressTime = NO_PROGRESS
     private val playbackTimerRunnable = object : Runnable {
         override fun run() {
-            player?.osdTime?.let { osdTime ->
-                onPlaybackProgress(mapOf("currentTime" to osdTime.timeInMillis.toDouble()))
+            // The OSD clock only ticks once a second, so most polls at short intervals see the
+            // same value; those are not sent unless every tick was asked for.
+            val currentTime = player?.osdTime?.timeInMillis ?: NO_PROGRESS
+            if (currentTime != NO_PROGRESS && (currentTime != lastProgressTime || !playbackProgressOnChangeOnly)) {
+                lastProgressTime = currentTime
+                if (eventBatcher.isEnabled) {
+                    eventBatcher.setCurrentTime(currentTime)
+                } else {
+                    onPlaybackProgress(mapOf("currentTime" to currentTime.toDouble()))
+                }
             }
-            // Poll every second
-            playbackTimerHandler.postDelayed(this, 1000)
+            playerHandler.postDelayed(this, playbackProgressIntervalMs)
         }
     }
 
     private fun startPlaybackTimer() {
         stopPlaybackTimer() // Ensure no multiple timers are running
-        playbackTimerHandler.post(playbackTimerRunnable)
+        if (playbackProgressIntervalMs <= 0 || isPlaybackPaused) return
+        lastProgressTime = NO_PROGRESS
+        playerHandler.post(playbackTimerRunnable)
     }
 
     private fun stopPlaybackTimer() {
-        playbackTimerHandler.removeCallbacks(playbackTimerRunnable)
+        playerHandler.removeCallbacks(playbackTimerRunnable)
     }
 
     init {
@@ -132,6 +285,7 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
             override fun surfaceCreated(holder: SurfaceHolder) {
                 Log.d("ExpoEzvizView", "Surface created. Autoplay: $autoplay, HasStarted: $hasAutoplayStarted")
                 player?.setSurfaceHold(holder)
+                if (player != null) onPlayerThread { startupTrace.markSurfaceBound() }
             }
             override fun surfaceChanged(holder: SurfaceHolder, format: Int, width: Int, height: Int) {}
             override fun surfaceDestroyed(holder: SurfaceHolder) {
@@ -139,6 +293,7 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
             }
         })
         addView(playerView)
+        addView(posterView)
     }
 
     override fun onAttachedToWindow() {
@@ -147,22 +302,39 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
         // It's crucial to re-create the player here, as the view instance is reused
         // when navigating back to the screen.
         createPlayer()
+        viewTreeObserver.addOnScrollChangedListener(scrollListener)
+    }
+
+    override fun onWindowVisibilityChanged(visibility: Int) {
+        super.onWindowVisibilityChanged(visibility)
+        // The window goes invisible when the host activity is stopped, i.e. the app is backgrounded.
+        checkVisibility()
     }
 
     override fun onLayout(changed: Boolean, l: Int, t: Int, r: Int, b: Int) {
         playerView.layout(0, 0, width, height)
+        posterView.layout(0, 0, width, height)
     }
 
     override fun onDetachedFromWindow() {
         super.onDetachedFromWindow()
         Log.d("ExpoEzvizView", "onDetachedFromWindow called. Stopping and destroying player.")
-        stopPlaybackTimer()
-        downloader?.stop()
-        downloader = null
-        player?.stopRealPlay()
-        player?.release()
-        player = null
-        hasAutoplayStarted = false // Reset the autoplay flag for the next mount
+        viewTreeObserver.removeOnScrollChangedListener(scrollListener)
+        mainHandler.removeCallbacks(suspendRunnable)
+        hidePoster()
+        // Downloads keep running; their outcome reaches JS through the module's
+        // onBackgroundDownloadComplete event instead.
+        downloadJobs.forEach { BackgroundDownloads.detachListener(it) }
+        downloadJobs.clear()
+        onPlayerThread {
+            suspendedStream = null
+            stopPlaybackTimer()
+            playerHandler.removeCallbacks(snapshotRunnable)
+            eventBatcher.clear()
+            seekController.cancel()
+            parkPlayer()
+            hasAutoplayStarted = false // Reset the autoplay flag for the next mount
+        }
     }
 
     // --- Public methods callable from JS ---
@@ -178,12 +350,12 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
         Log.d("ExpoEzvizView", info.toString())
     }
 
-    fun openSound() {
+    fun openSound() = onPlayerThread {
         player?.openSound()
         isSoundOn = true
     }
 
-    fun closeSound() {
+    fun closeSound() = onPlayerThread {
         player?.closeSound()
         isSoundOn = false
     }
@@ -194,126 +366,446 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
         Log.d("ExpoEzvizView", "Default sound prop set to: ${this.defaultSoundOn}")
     }
 
-    fun startRealPlay() {
+    fun startRealPlay() = onPlayerThread {
+        suspendedStream = null
+        isStreamRequested = true
+        realPlayStartedAt = System.nanoTime()
+        startupTrace.markStreamStarted("live")
+        // Both settings only take effect when a stream starts. The SDK keeps the quality in the
+        // player and applies it on every later start, so it is set (or cleared, for a pooled
+        // player that another view or the grid configured) each time. The auto level detector
+        // cannot be turned off again; its messages are ignored unless adaptiveVideoLevel is set.
+        when (videoQuality) {
+            "performance" -> {
+                player?.setVideoQuality(EZConstants.EZVideoQuality.VIDEO_PERFORMANCE_PRIORITY)
+                videoLevel.reset(AdaptiveVideoLevel.LEVEL_FLUENT)
+            }
+            "quality" -> {
+                player?.setVideoQuality(EZConstants.EZVideoQuality.VIDEO_QUALITY_PRIORITY)
+                videoLevel.reset(AdaptiveVideoLevel.LEVEL_HD)
+            }
+            else -> {
+                player?.setVideoQuality(null)
+                videoLevel.reset(AdaptiveVideoLevel.LEVEL_BALANCED)
+            }
+        }
+        if (adaptiveVideoLevel) {
+            player?.enableDeviceAutoVideoLevel()
+        }
+        applyDecodeMode()
         player?.startRealPlay()
     }
 
-    fun stopRealPlay() {
+    fun stopRealPlay() = onPlayerThread {
+        suspendedStream = null
+        isRealPlaying = false
+        isStreamRequested = false
         player?.stopRealPlay()
     }
 
-    fun capturePicture() {
+    // The SDK writes an encoded JPEG itself; that file is copied into the gallery (or handed back
+    // as a path) as is, on a worker thread, instead of being decoded and re-compressed. The capture
+    // itself runs on the player thread, in order with the player's other calls.
+    fun capturePicture(options: ExpoCaptureOptions?) = onPlayerThread {
         Log.d("ExpoEzvizView", "capturePicture() called")
-        Handler(Looper.getMainLooper()).post {
-            val bitmap = player?.capturePicture()
-            if (bitmap == null) {
-                Log.e("ExpoEzvizView", "capturePicture() failed, returned null bitmap.")
-                onPictureCaptured(mapOf("success" to false, "error" to "Failed to capture image from player."))
-                return@post
-            }
+        val currentPlayer = player
+        if (currentPlayer == null) {
+            onPictureCaptured(mapOf("success" to false, "error" to "Player is not ready."))
+            return@onPlayerThread
+        }
+        val saveToGallery = options?.saveToGallery ?: true
+        val streamId = options?.streamId ?: 0
+        val file = File(File(context.cacheDir, CAPTURE_DIRECTORY), "IMG_${System.currentTimeMillis()}.jpg")
 
-            Log.d("ExpoEzvizView", "Picture captured successfully. Now saving to gallery.")
-            saveBitmapToGallery(bitmap)
+        val result = EzvizMetrics.measure("player.capturePicture") {
+            currentPlayer.capturePicture(file.absolutePath, streamId)
+        }
+        if (result != 0 || !file.exists()) {
+            Log.e("ExpoEzvizView", "capturePicture() failed with code $result.")
+            file.delete()
+            onPictureCaptured(mapOf("success" to false, "error" to "Failed to capture image from player ($result)."))
+            return@onPlayerThread
+        }
+        if (!saveToGallery) {
+            onPictureCaptured(mapOf("success" to true, "path" to file.absolutePath))
+            return@onPlayerThread
+        }
+
+        Log.d("ExpoEzvizView", "Picture captured successfully. Now saving to gallery.")
+        playerExecutor.execute(SdkPriority.USER) {
+            try {
+                val published = MediaStorePublisher.publishImage(context, file)
+                Log.d("ExpoEzvizView", "Image saved successfully to gallery.")
+                onPictureCaptured(mapOf("success" to true, "uri" to published.uri.toString()))
+            } catch (e: Exception) {
+                Log.e("ExpoEzvizView", "Save error: ${e.localizedMessage}")
+                onPictureCaptured(mapOf("success" to false, "error" to "Failed to save image: ${e.localizedMessage}"))
+            } finally {
+                file.delete()
+            }
         }
     }
 
-    fun startPlayback(recordFileDict: Map<String, Any>): Boolean {
+    fun startPlayback(recordFileDict: Map<String, Any>, promise: Promise) = resolveOnPlayerThread(promise) {
         val recordFile = createDeviceRecordFile(recordFileDict)
-        return player?.startPlayback(recordFile) ?: false
+        playbackStartedAt = System.nanoTime()
+        seekController.cancel()
+        suspendedStream = null
+        isPlaybackActive = true
+        isPlaybackPaused = false
+        startupTrace.markStreamStarted("playback")
+        lastRecordFile = recordFile
+        applyDecodeMode()
+        player?.startPlayback(recordFile) ?: false
     }
 
-    fun stopPlayback(): Boolean {
+    fun stopPlayback(promise: Promise) = resolveOnPlayerThread(promise) {
         stopPlaybackTimer()
-        return player?.stopPlayback() ?: false
+        seekController.cancel()
+        suspendedStream = null
+        isPlaybackActive = false
+        player?.stopPlayback() ?: false
     }
 
-    fun startLocalRecordWithFile(path: String): Boolean {
-        return player?.startLocalRecordWithFile(path) ?: false
+    fun startLocalRecordWithFile(path: String, promise: Promise) = resolveOnPlayerThread(promise) {
+        player?.startLocalRecordWithFile(path) ?: false
     }
 
-    fun stopLocalRecord() {
+    fun stopLocalRecord() = onPlayerThread {
         player?.stopLocalRecord()
     }
 
-    fun pausePlayback(): Boolean {
-        return player?.pausePlayback() ?: false
+    fun pausePlayback(promise: Promise) = resolveOnPlayerThread(promise) {
+        isPlaybackPaused = true
+        stopPlaybackTimer()
+        player?.pausePlayback() ?: false
     }
 
-    fun resumePlayback(): Boolean {
-        return player?.resumePlayback() ?: false
+    fun resumePlayback(promise: Promise) = resolveOnPlayerThread(promise) {
+        isPlaybackPaused = false
+        if (suspendedStream == SuspendedStream.PLAYBACK) {
+            // Still hidden: resume once the view is visible again.
+            return@resolveOnPlayerThread true
+        }
+        val resumed = player?.resumePlayback() ?: false
+        if (isPlaybackActive) startPlaybackTimer()
+        resumed
     }
 
+    // Resolves as soon as the request is queued; where playback landed arrives as onSeekComplete.
     fun seekPlayback(timestamp: Double): Boolean {
-        val calendar = Calendar.getInstance()
         // JS sends timestamp in milliseconds
-        calendar.timeInMillis = timestamp.toLong()
-        Handler(Looper.getMainLooper()).post {
-            player?.seekPlayback(calendar)
-        }
+        val target = timestamp.toLong()
+        onPlayerThread { seekController.request(target) }
         return true
     }
 
-    fun downloadRecordFile(recordFileDict: Map<String, Any>) {
+    // Queues the download with BackgroundDownloads and returns its job id, or null if it could not
+    // be queued (onDownloadError says why). The job outlives this view.
+    fun downloadRecordFile(recordFileDict: Map<String, Any>, segments: Int = 1): String? {
         val recordFile = createDeviceRecordFile(recordFileDict)
         val currentDeviceSerial = deviceSerial
         val currentVerifyCode = verifyCode
 
         if (currentDeviceSerial.isNullOrEmpty() || currentVerifyCode.isNullOrEmpty()) {
             onDownloadError(mapOf("error" to "Device serial or verify code is not set."))
-            return
+            return null
         }
 
-        val downloadPath = getDownloadPath()
+        val downloadPath = BackgroundDownloads.outputDirectory(context)
         if (downloadPath == null) {
             onDownloadError(mapOf("error" to "Could not create download directory."))
-            return
+            return null
         }
 
-        val fileName = "${currentDeviceSerial}_${System.currentTimeMillis()}.ps"
-        val fullPath = File(downloadPath, fileName).absolutePath
-
-        Log.d("ExpoEzvizView", "Starting download to path: $fullPath")
-
-        downloader = EZDeviceStreamDownload(fullPath, currentDeviceSerial, cameraNo, recordFile).apply {
-            setStreamDownloadCallback(object : EZOpenSDKListener.EZStreamDownloadCallback {
-                override fun onSuccess(path: String) {
-                    val mp4FilePath = path.replace(".ps", ".mp4")
-                    Log.d("ExpoEzvizView", "Download successful. Starting conversion of $path to $mp4FilePath")
-                    VideoTransUtil.TransPsToMp4(path, currentVerifyCode, mp4FilePath, object: EZOpenSDKListener.EZStreamDownloadCallback{
-                        override fun onSuccess(convertedPath: String) {
-                            Handler(Looper.getMainLooper()).post {
-                                Log.d("ExpoEzvizView", "Conversion successful. Saving to gallery.")
-                                saveVideoToGallery(convertedPath)
-                                // Clean up original .ps file
-                                File(path).delete()
-                            }
-                        }
-
-                        override fun onError(error: EZOpenSDKListener.EZStreamDownloadError?) {
-                            Handler(Looper.getMainLooper()).post {
-                                val errorMessage = "Conversion failed: $error"
-                                Log.e("ExpoEzvizView", errorMessage)
-                                onDownloadError(mapOf("error" to errorMessage))
-                                // Clean up original .ps file even if conversion fails
-                                File(path).delete()
-                            }
-                        }
-                    })
-                }
+        val request = DownloadManager.Request(currentDeviceSerial, cameraNo, currentVerifyCode, recordFile, downloadPath, true, segments)
+        val jobId = BackgroundDownloads.start(context, request, downloadListener)
+        downloadJobs.add(jobId)
+        Log.d("ExpoEzvizView", "Queued download $jobId")
+        return jobId
+    }
 
-                override fun onError(error: EZOpenSDKListener.EZStreamDownloadError?) {
-                    Handler(Looper.getMainLooper()).post {
-                        val errorMessage = "Download failed: $error"
-                        Log.e("ExpoEzvizView", errorMessage)
-                        onDownloadError(mapOf("error" to errorMessage))
-                    }
+    fun cancelDownload(jobId: String): Boolean {
+        return downloadJobs.contains(jobId) && BackgroundDownloads.cancel(jobId)
+    }
+
+    // The SDK capture runs on the player thread, in order with the player's other calls; decoding
+    // and downsampling it into the cache runs on a worker.
+    fun captureSnapshot() = onPlayerThread {
+        val currentPlayer = player ?: return@onPlayerThread
+        val key = playerKey ?: return@onPlayerThread
+        if (!isSnapshotInFlight.compareAndSet(false, true)) return@onPlayerThread
+        val cacheDir = context.cacheDir
+        val capture = File(File(cacheDir, CAPTURE_DIRECTORY), "snapshot_${System.currentTimeMillis()}.jpg")
+
+        val result = EzvizMetrics.measure("player.captureSnapshot") {
+            currentPlayer.capturePicture(capture.absolutePath, 0)
+        }
+        if (result != 0) {
+            Log.w("ExpoEzvizView", "Snapshot for $key failed with code $result.")
+            capture.delete()
+            isSnapshotInFlight.set(false)
+            return@onPlayerThread
+        }
+        val onCancel = {
+            capture.delete()
+            isSnapshotInFlight.set(false)
+        }
+        playerExecutor.execute(SdkPriority.BACKGROUND, onCancel) {
+            try {
+                val snapshot = SnapshotCache.store(cacheDir, key, capture)
+                if (snapshot == null) {
+                    Log.w("ExpoEzvizView", "Snapshot for $key could not be decoded.")
+                    return@execute
                 }
-            })
-            start()
+                onSnapshot(mapOf(
+                    "path" to snapshot.file.absolutePath,
+                    "width" to snapshot.bitmap.width,
+                    "height" to snapshot.bitmap.height,
+                    "capturedAt" to snapshot.capturedAt.toDouble()
+                ))
+            } finally {
+                capture.delete()
+                isSnapshotInFlight.set(false)
+            }
         }
     }
 
     // --- Private Helper Functions ---
+    private val downloadListener = object : DownloadManager.Listener {
+        override fun onProgress(job: DownloadManager.Job) {
+            val event = mapOf(
+                "jobId" to job.id,
+                "stage" to job.stage.name.lowercase(),
+                "progress" to job.progress,
+                "bytesWritten" to job.bytesWritten.toDouble()
+            )
+            onDownloadProgress(event)
+        }
+
+        override fun onSuccess(job: DownloadManager.Job, path: String, savedToAlbum: Boolean) {
+            downloadJobs.remove(job.id)
+            Log.d("ExpoEzvizView", "Download ${job.id} finished: $path")
+            onDownloadSuccess(
+                mapOf("jobId" to job.id, "path" to path, "savedToAlbum" to savedToAlbum) +
+                    (job.published?.toEventFields() ?: emptyMap())
+            )
+        }
+
+        override fun onError(job: DownloadManager.Job, code: String, message: String, path: String?) {
+            downloadJobs.remove(job.id)
+            Log.e("ExpoEzvizView", "Download ${job.id} failed: $message")
+            onDownloadError(mapOf("jobId" to job.id, "code" to code, "error" to message, "path" to path))
+        }
+    }
+
+    private val isSnapshotInFlight = AtomicBoolean(false)
+    private val snapshotRunnable = object : Runnable {
+        override fun run() {
+            if (isRealPlaying || (isPlaybackActive && !isPlaybackPaused)) {
+                captureSnapshot()
+            }
+            playerHandler.postDelayed(this, snapshotIntervalMs)
+        }
+    }
+
+    private fun restartSnapshotTimer() {
+        playerHandler.removeCallbacks(snapshotRunnable)
+        if (snapshotIntervalMs > 0 && isAttachedToWindow) {
+            playerHandler.postDelayed(snapshotRunnable, snapshotIntervalMs)
+        }
+    }
+
+    private fun showPoster(key: PlayerPool.Key) {
+        SnapshotCache.acquire(key)?.let {
+            setPoster(it.bitmap)
+            return
+        }
+        val cacheDir = context.cacheDir
+        playerExecutor.execute(SdkPriority.BACKGROUND) {
+            val snapshot = SnapshotCache.load(cacheDir, key) ?: return@execute
+            mainHandler.post {
+                // Skip it if the stream beat the disk read or the view moved to another camera.
+                if (playerKey == key && !startupTrace.hasFirstFrame) {
+                    setPoster(snapshot.bitmap)
+                } else {
+                    SnapshotCache.release(snapshot.bitmap)
+                }
+            }
+        }
+    }
+
+    // Takes over a bitmap already pinned through SnapshotCache.acquire or load.
+    private fun setPoster(bitmap: Bitmap) {
+        hidePoster()
+        posterBitmap = bitmap
+        posterView.setImageBitmap(bitmap)
+        posterView.visibility = VISIBLE
+    }
+
+    private fun hidePoster() {
+        val bitmap = posterBitmap ?: return
+        posterBitmap = null
+        posterView.setImageDrawable(null)
+        posterView.visibility = GONE
+        SnapshotCache.release(bitmap)
+    }
+
+    // Must run before the stream starts; the decoder is picked when the stream is opened.
+    private fun applyDecodeMode() {
+        val serial = deviceSerial
+        isDecodeFallback = false
+        isHardwareDecoding = when (decodeMode) {
+            "hardware" -> true
+            "auto" -> serial == null || serial !in hardwareDecodeFailures
+            else -> false
+        }
+        player?.setHardDecode(isHardwareDecoding)
+    }
+
+    // In auto mode a stream that fails under hardware decoding is restarted once in software.
+    // Only if that retry plays is the camera remembered (in reportDecoder), so later streams skip
+    // straight to software; an offline device or a bad token fails in software too and leaves
+    // hardware decoding alone. Credential errors are reported as they are.
+    private fun retryWithSoftwareDecode(errorInfo: ErrorInfo?, isLive: Boolean): Boolean {
+        if (decodeMode != "auto" || !isHardwareDecoding) return false
+        if (errorInfo?.errorCode in VERIFY_CODE_ERRORS) return false
+        val currentPlayer = player ?: return false
+        val recordFile = lastRecordFile
+        if (!isLive && recordFile == null) return false
+
+        Log.w("ExpoEzvizView", "Hardware decoded stream failed (${errorInfo?.errorCode}), retrying in software.")
+        isHardwareDecoding = false
+        isDecodeFallback = true
+        currentPlayer.setHardDecode(false)
+        if (isLive) {
+            currentPlayer.stopRealPlay()
+            currentPlayer.startRealPlay()
+        } else {
+            currentPlayer.stopPlayback()
+            currentPlayer.startPlayback(recordFile)
+        }
+        return true
+    }
+
+    private fun reportDecoder() {
+        if (isDecodeFallback) deviceSerial?.let { hardwareDecodeFailures.add(it) }
+        onDecoderSelected(mapOf(
+            "decoder" to if (isHardwareDecoding) "hardware" else "software",
+            "mode" to decodeMode,
+            "fallback" to isDecodeFallback
+        ))
+    }
+
+    // Changing the device's video level is a blocking server call, and the running stream keeps
+    // its old resolution until it is restarted.
+    private fun switchVideoLevel(newLevel: Int, reason: String) {
+        val currentPlayer = player ?: return
+        val currentDeviceSerial = deviceSerial ?: return
+        val currentCameraNo = cameraNo
+        Log.d("ExpoEzvizView", "Switching video level ${videoLevel.level} -> $newLevel ($reason)")
+        // Both outcomes go back to the player thread, which owns videoLevel; cancellation can be
+        // reported from whichever thread drained the queue.
+        val onCancel = { playerHandler.post { videoLevel.onSwitchFinished(newLevel, false) }; Unit }
+        playerExecutor.execute(SdkPriority.BACKGROUND, onCancel) {
+            val success = try {
+                EzvizMetrics.measure("setVideoLevel", "sdk-error") {
+                    EZOpenSDK.getInstance().setVideoLevel(currentDeviceSerial, currentCameraNo, newLevel)
+                }
+            } catch (e: Exception) {
+                Log.e("ExpoEzvizView", "Failed to set video level $newLevel: ${e.message}")
+                false
+            }
+            playerHandler.post {
+                videoLevel.onSwitchFinished(newLevel, success)
+                if (!success || player !== currentPlayer || !isRealPlaying) return@post
+                // A startup priority would put the stream back at the lowest or highest level on
+                // restart, undoing the step; it only applies to the first start.
+                currentPlayer.setVideoQuality(null)
+                currentPlayer.stopRealPlay()
+                currentPlayer.startRealPlay()
+                onVideoLevelChange(mapOf("level" to newLevel, "reason" to reason))
+            }
+        }
+    }
+
+    private fun checkVisibility() {
+        if (suspendWhenHidden == "off") return
+        val isBackgrounded = windowVisibility != VISIBLE
+        if (!isBackgrounded && isOnScreen()) {
+            mainHandler.removeCallbacks(suspendRunnable)
+            if (suspendedStream != null) onPlayerThread { resumeStreaming() }
+            return
+        }
+        if (suspendedStream != null) return
+        // Scrolling past a view briefly hides it, so off-screen suspension waits a moment;
+        // backgrounding suspends straight away.
+        mainHandler.removeCallbacks(suspendRunnable)
+        mainHandler.postDelayed(suspendRunnable, if (isBackgrounded) 0 else SUSPEND_DELAY_MS)
+    }
+
+    private fun isOnScreen(): Boolean {
+        if (!isShown || width == 0 || height == 0) return false
+        if (!getGlobalVisibleRect(visibleRect)) return false
+        val visibleArea = visibleRect.width().toLong() * visibleRect.height()
+        return visibleArea * 4 >= width.toLong() * height // at least a quarter of the view is on screen
+    }
+
+    private fun suspendStreaming() {
+        val currentPlayer = player ?: return
+        if (suspendedStream != null || suspendWhenHidden == "off") return
+        suspendedStream = when {
+            isPlaybackActive && !isPlaybackPaused -> {
+                stopPlaybackTimer()
+                currentPlayer.pausePlayback()
+                SuspendedStream.PLAYBACK
+            }
+            isRealPlaying -> {
+                currentPlayer.stopRealPlay()
+                isRealPlaying = false
+                isStreamRequested = false
+                SuspendedStream.LIVE
+            }
+            else -> null
+        }
+        suspendedStream?.let {
+            Log.d("ExpoEzvizView", "Suspended $it stream while hidden.")
+            onSuspendStateChange(mapOf("suspended" to true, "mode" to suspendWhenHidden))
+        }
+    }
+
+    private fun resumeStreaming() {
+        val suspended = suspendedStream ?: return
+        val currentPlayer = player ?: return
+        suspendedStream = null
+        when (suspended) {
+            SuspendedStream.PLAYBACK -> {
+                currentPlayer.resumePlayback()
+                startPlaybackTimer()
+            }
+            SuspendedStream.LIVE -> startRealPlay()
+        }
+        Log.d("ExpoEzvizView", "Resumed $suspended stream.")
+        onSuspendStateChange(mapOf("suspended" to false, "mode" to suspendWhenHidden))
+    }
+
+    private fun reportStartupTrace(error: String? = null) {
+        val event = startupTrace.toEvent(player?.streamFetchType ?: -1, error)
+        if (error == null && EzvizMetrics.isEnabled) {
+            val firstFrameNanos = (startupTrace.timeToFirstFrameMs * 1_000_000).toLong()
+            EzvizMetrics.operation("player.firstFrame.${event["mode"]}").recordSuccess(firstFrameNanos)
+        }
+        Log.d("ExpoEzvizView", "Startup trace: $event")
+        onPerformance(event)
+    }
+
+    private fun recordPlayerOperation(name: String, startedAt: Long, errorCode: String?) {
+        if (startedAt == 0L || !EzvizMetrics.isEnabled) return
+        val operation = EzvizMetrics.operation("player.$name")
+        val elapsed = System.nanoTime() - startedAt
+        if (errorCode == null) operation.recordSuccess(elapsed) else operation.recordError(errorCode, elapsed)
+    }
+
     private fun createDeviceRecordFile(recordFileDict: Map<String, Any>): EZDeviceRecordFile {
         val recordFile = EZDeviceRecordFile()
         val startTimeMillis = (recordFileDict["startTime"] as? Double)?.toLong()
@@ -332,14 +824,6 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
         return recordFile
     }
 
-    private fun getDownloadPath(): String? {
-        val dir = context.getExternalFilesDir(Environment.DIRECTORY_DOWNLOADS)
-        if (dir != null && (dir.exists() || dir.mkdirs())) {
-            return dir.absolutePath
-        }
-        return null
-    }
-
     fun createPlayer() {
         Log.d("ExpoEzvizView", "createPlayer() called")
         val currentDeviceSerial = deviceSerial
@@ -348,11 +832,24 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
             return
         }
 
-        Handler(Looper.getMainLooper()).post {
-            player?.release()
-            Log.d("ExpoEzvizView", "Executing player creation on main thread.")
-            player = EZOpenSDK.getInstance().createPlayer(currentDeviceSerial, cameraNo)
-            Log.d("ExpoEzvizView", "Player instance created.")
+        playerHandler.post {
+            val key = PlayerPool.Key(currentDeviceSerial, cameraNo)
+            parkPlayer()
+            val pooled = PlayerPool.acquire(key)
+            if (pooled != null) {
+                Log.d("ExpoEzvizView", "Reusing pooled player instance.")
+                player = pooled.player
+                // parkPlayer muted it; defaultSoundOn decides below whether it opens again.
+                isSoundOn = false
+            } else {
+                Log.d("ExpoEzvizView", "Creating player on the player thread.")
+                player = EZOpenSDK.getInstance().createPlayer(currentDeviceSerial, cameraNo)
+                Log.d("ExpoEzvizView", "Player instance created.")
+            }
+            playerKey = key
+            startupTrace.markPlayerCreated(pooled != null)
+            if (showPoster && pooled?.isStreaming != true) mainHandler.post { showPoster(key) }
+            restartSnapshotTimer()
 
             player?.setHandler(playerHandler)
 
@@ -362,11 +859,21 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
                 Log.d("ExpoEzvizView", "Verify code set.")
             }
 
-            player?.setSurfaceHold(playerView.holder)
-            Log.d("ExpoEzvizView", "Player delegate and surface holder set.")
+            val created = player
+            mainHandler.post { bindSurface(created) }
 
-            // Handle autoplay here to avoid race conditions.
-            if (autoplay && !hasAutoplayStarted) {
+            if (pooled?.isStreaming == true) {
+                // The parked stream is still live, so this view is already playing.
+                Log.d("ExpoEzvizView", "Pooled player is still streaming, skipping stream setup.")
+                isRealPlaying = true
+                isStreamRequested = true
+                hasAutoplayStarted = true
+                if (defaultSoundOn == true) {
+                    openSound()
+                }
+                onLoad(emptyMap())
+            } else if (autoplay && !hasAutoplayStarted) {
+                // Handle autoplay here to avoid race conditions.
                 Log.d("ExpoEzvizView", "Autoplay is enabled, starting real play.")
                 startRealPlay()
                 hasAutoplayStarted = true
@@ -374,87 +881,87 @@ class ExpoEzvizView(context: Context, appContext: AppContext) : ExpoView(context
         }
     }
 
-    private fun saveBitmapToGallery(bitmap: Bitmap) {
-        val fileName = "IMG_${System.currentTimeMillis()}.jpg"
-        var imageUri: android.net.Uri? = null
-
-        try {
-            val resolver = context.contentResolver
-            val contentValues = ContentValues().apply {
-                put(MediaStore.MediaColumns.DISPLAY_NAME, fileName)
-                put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg")
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                    put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES)
-                    put(MediaStore.MediaColumns.IS_PENDING, 1)
-                }
-            }
-
-            imageUri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, contentValues)
-                ?: throw IOException("Failed to create new MediaStore record.")
-
-            resolver.openOutputStream(imageUri)?.use { fos ->
-                if (!bitmap.compress(Bitmap.CompressFormat.JPEG, 100, fos)) {
-                    throw IOException("Failed to save bitmap.")
-                }
-            } ?: throw IOException("Failed to get output stream.")
+    private fun reportPlayerMessage(code: Int) {
+        if (!eventBatcher.isSubscribed(code)) return
+        if (eventBatcher.isEnabled) {
+            eventBatcher.addMessage(code)
+        } else {
+            onPlayerMessage(mapOf("messageCode" to code))
+        }
+    }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                contentValues.clear()
-                contentValues.put(MediaStore.MediaColumns.IS_PENDING, 0)
-                resolver.update(imageUri, contentValues, null, null)
-            }
+    // The one player call kept on the main thread, next to the SurfaceHolder callbacks.
+    private fun bindSurface(target: EZPlayer?) {
+        if (target == null || player !== target) return
+        target.setSurfaceHold(playerView.holder)
+        val isSurfaceValid = playerView.holder.surface?.isValid == true
+        if (isSurfaceValid) onPlayerThread { startupTrace.markSurfaceBound() }
+        Log.d("ExpoEzvizView", "Player delegate and surface holder set.")
+    }
 
-            Log.d("ExpoEzvizView", "Image saved successfully to gallery.")
-            onPictureCaptured(mapOf("success" to true))
+    // Runs block on this view's player thread: straight away when already on it, otherwise queued
+    // behind the player's earlier calls and messages.
+    private fun onPlayerThread(block: () -> Unit) {
+        if (Looper.myLooper() == playerHandler.looper) block() else playerHandler.post(block)
+    }
 
+    // For JS calls that return the SDK's result: the call runs on the player thread and the
+    // promise settles there, so the main thread never waits on the SDK.
+    private fun resolveOnPlayerThread(promise: Promise, block: () -> Any?) = onPlayerThread {
+        try {
+            promise.resolve(block())
         } catch (e: Exception) {
-            if (imageUri != null) {
-                context.contentResolver.delete(imageUri, null, null)
-            }
-            Log.e("ExpoEzvizView", "Save error: ${e.localizedMessage}")
-            onPictureCaptured(mapOf("success" to false, "error" to "Failed to save image: ${e.localizedMessage}"))
+            promise.reject("player-error", e.message, e)
         }
     }
 
-    private fun saveVideoToGallery(videoPath: String) {
-        val file = File(videoPath)
-        if (!file.exists()) {
-            onDownloadError(mapOf("error" to "Converted MP4 file not found.", "path" to videoPath))
-            return
+    // Hands the current player to PlayerPool instead of releasing it, so re-attaching to the same
+    // camera can reuse it. Remote playback is stopped first; only live streams that are already
+    // playing are kept warm, muted so a screen the user has left does not go on playing sound.
+    private fun parkPlayer() {
+        val currentPlayer = player ?: return
+        val currentKey = playerKey
+        player = null
+        playerKey = null
+        if (isPlaybackActive) {
+            stopPlaybackTimer()
+            currentPlayer.stopPlayback()
+            isPlaybackActive = false
         }
-
-        val values = ContentValues().apply {
-            put(MediaStore.Video.Media.TITLE, file.name)
-            put(MediaStore.Video.Media.DISPLAY_NAME, file.name)
-            put(MediaStore.Video.Media.MIME_TYPE, "video/mp4")
-            put(MediaStore.Video.Media.DATE_ADDED, System.currentTimeMillis() / 1000)
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                put(MediaStore.Video.Media.IS_PENDING, 1)
-            }
+        if (isSoundOn) {
+            currentPlayer.closeSound()
+            isSoundOn = false
+        }
+        if (isStreamRequested && !isRealPlaying) {
+            // Still connecting: its play-success message would be dropped while parked.
+            currentPlayer.stopRealPlay()
         }
+        if (currentKey != null) {
+            PlayerPool.park(currentKey, currentPlayer, isRealPlaying, keepStreamAliveMs)
+        } else {
+            currentPlayer.stopRealPlay()
+            currentPlayer.release()
+        }
+        isRealPlaying = false
+        isStreamRequested = false
+    }
 
-        val resolver = context.contentResolver
-        val uri = resolver.insert(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, values)
+    companion object {
+        private const val SUSPEND_DELAY_MS = 500L
+        private const val DEFAULT_PROGRESS_INTERVAL_MS = 1_000L
+        private const val NO_PROGRESS = Long.MIN_VALUE
 
-        try {
-            uri?.let { uriValue ->
-                resolver.openOutputStream(uriValue)?.use { out ->
-                    file.inputStream().use { inputStream ->
-                        inputStream.copyTo(out)
-                    }
-                }
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                    values.clear()
-                    values.put(MediaStore.Video.Media.IS_PENDING, 0)
-                    resolver.update(uriValue, values, null, null)
-                }
-                Log.d("ExpoEzvizView", "Video saved to photo album successfully.")
-                onDownloadSuccess(mapOf("path" to uriValue.toString(), "savedToAlbum" to true))
-                file.delete() // Clean up the temporary MP4 file
-            } ?: throw IOException("Failed to create new MediaStore record.")
-        } catch (e: Exception) {
-            Log.e("ExpoEzvizView", "Failed to save video to photo album. Error: ${e.localizedMessage}")
-            onDownloadError(mapOf("error" to "Failed to save video to photo album.", "path" to videoPath))
-        }
+        // Password errors from the SDK; see retryWithSoftwareDecode.
+        private val VERIFY_CODE_ERRORS = setOf(400035, 400036)
+
+        // Serials whose streams failed under hardware decoding in this process. Shared by views on
+        // different player threads.
+        private val hardwareDecodeFailures = ConcurrentHashMap.newKeySet<String>()
+
+        private const val CAPTURE_DIRECTORY = "ezviz-captures"
+
+        // Blocking player work (video level switches, captures) shared by all views, so none of
+        // it runs on the main thread.
+        private val playerExecutor = SdkExecutor(parallelism = 2)
     }
 }
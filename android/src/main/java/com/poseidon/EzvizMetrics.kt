@@ -0,0 +1,150 @@
+package com.poseidon
+
+import expo.modules.kotlin.Promise
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicLongArray
+
+/**
+ * Process-wide latency and error counters for module functions, player operations and the SDK
+ * queue. Recording is lock-free (atomic counters over fixed histogram buckets) so it can stay on
+ * in production; percentiles are reported as the upper bound of the bucket they fall in.
+ */
+object EzvizMetrics {
+
+  // Upper bounds in milliseconds. Anything slower lands in the overflow bucket.
+  private val BUCKET_BOUNDS_MS = longArrayOf(
+    1, 2, 5, 10, 20, 50, 100, 200, 500, 1_000, 2_000, 5_000, 10_000, 20_000, 60_000
+  )
+
+  class Histogram {
+    private val buckets = AtomicLongArray(BUCKET_BOUNDS_MS.size + 1)
+    private val count = AtomicLong()
+    private val totalMicros = AtomicLong()
+    private val maxMicros = AtomicLong()
+
+    fun record(nanos: Long) {
+      val micros = nanos / 1_000
+      val millis = micros / 1_000
+      var index = BUCKET_BOUNDS_MS.indexOfFirst { millis < it }
+      if (index < 0) index = BUCKET_BOUNDS_MS.size
+      buckets.incrementAndGet(index)
+      count.incrementAndGet()
+      totalMicros.addAndGet(micros)
+      maxMicros.accumulateAndGet(micros) { a, b -> maxOf(a, b) }
+    }
+
+    fun snapshot(): Map<String, Any> {
+      val total = count.get()
+      val maxMs = maxMicros.get() / 1_000.0
+      return mapOf(
+        "count" to total,
+        "meanMs" to if (total == 0L) 0.0 else totalMicros.get() / 1_000.0 / total,
+        "maxMs" to maxMs,
+        "p50Ms" to percentile(0.50, total, maxMs),
+        "p95Ms" to percentile(0.95, total, maxMs),
+        "p99Ms" to percentile(0.99, total, maxMs)
+      )
+    }
+
+    private fun percentile(quantile: Double, total: Long, maxMs: Double): Double {
+      if (total == 0L) return 0.0
+      val rank = Math.ceil(quantile * total).toLong()
+      var seen = 0L
+      for (index in 0 until buckets.length()) {
+        seen += buckets.get(index)
+        if (seen >= rank) {
+          return if (index < BUCKET_BOUNDS_MS.size) minOf(BUCKET_BOUNDS_MS[index].toDouble(), maxMs) else maxMs
+        }
+      }
+      return maxMs
+    }
+  }
+
+  class Operation {
+    val latency = Histogram()
+    val calls = AtomicLong()
+    val errors = ConcurrentHashMap<String, AtomicLong>()
+
+    fun recordSuccess(nanos: Long) {
+      calls.incrementAndGet()
+      latency.record(nanos)
+    }
+
+    fun recordError(code: String, nanos: Long) {
+      calls.incrementAndGet()
+      latency.record(nanos)
+      errors.getOrPut(code) { AtomicLong() }.incrementAndGet()
+    }
+
+    fun snapshot(): Map<String, Any> {
+      val errorCounts = errors.mapValues { it.value.get() }
+      return latency.snapshot() + mapOf(
+        "calls" to calls.get(),
+        "errorCount" to errorCounts.values.sum(),
+        "errors" to errorCounts
+      )
+    }
+  }
+
+  @Volatile
+  var isEnabled = true
+
+  private val operations = ConcurrentHashMap<String, Operation>()
+  private val queueWaits = ConcurrentHashMap<String, Histogram>()
+
+  fun operation(name: String): Operation = operations.getOrPut(name) { Operation() }
+
+  fun recordQueueWait(queue: String, nanos: Long) {
+    if (!isEnabled) return
+    queueWaits.getOrPut(queue) { Histogram() }.record(nanos)
+  }
+
+  // Wraps an AsyncFunction's promise so its latency and outcome are recorded when it settles.
+  fun track(name: String, promise: Promise): Promise {
+    if (!isEnabled) return promise
+    return TrackedPromise(operation(name), promise, System.nanoTime())
+  }
+
+  // Times a synchronous call, counting any exception under errorCode before rethrowing it.
+  inline fun <T> measure(name: String, errorCode: String = "exception", block: () -> T): T {
+    if (!isEnabled) return block()
+    val start = System.nanoTime()
+    val result = try {
+      block()
+    } catch (e: Exception) {
+      operation(name).recordError(errorCode, System.nanoTime() - start)
+      throw e
+    }
+    operation(name).recordSuccess(System.nanoTime() - start)
+    return result
+  }
+
+  fun snapshot(): Map<String, Any> {
+    return mapOf(
+      "operations" to operations.mapValues { it.value.snapshot() },
+      "queueWait" to queueWaits.mapValues { it.value.snapshot() }
+    )
+  }
+
+  fun reset() {
+    operations.clear()
+    queueWaits.clear()
+  }
+
+  private class TrackedPromise(
+    private val operation: Operation,
+    private val delegate: Promise,
+    private val startNanos: Long
+  ) : Promise {
+    override fun resolve(value: Any?) {
+      operation.recordSuccess(System.nanoTime() - startNanos)
+      delegate.resolve(value)
+    }
+
+    override fun reject(code: String, message: String?, cause: Throwable?) {
+      operation.recordError(code, System.nanoTime() - startNanos)
+      delegate.reject(code, message, cause)
+    }
+  }
+}
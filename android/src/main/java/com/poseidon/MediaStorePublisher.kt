@@ -0,0 +1,103 @@
+package com.poseidon
+
+import android.content.ContentValues
+import android.content.Context
+import android.net.Uri
+import android.os.Build
+import android.os.Environment
+import android.provider.MediaStore
+import java.io.File
+import java.io.FileInputStream
+import java.io.FileOutputStream
+import java.io.IOException
+import java.nio.channels.FileChannel
+
+/**
+ * Copies finished files into the shared media collections. Blocking; call from a worker thread.
+ *
+ * The copy is a FileChannel.transferTo from the source file into the MediaStore entry's file
+ * descriptor, which lets the kernel move the bytes (sendfile/splice) instead of streaming them
+ * through a heap buffer.
+ */
+object MediaStorePublisher {
+
+  class Published(val uri: Uri, val bytes: Long, val elapsedNanos: Long) {
+    val elapsedMs: Double
+      get() = elapsedNanos / 1_000_000.0
+
+    val throughputMBps: Double
+      get() = if (elapsedNanos <= 0) 0.0 else bytes / 1_048_576.0 / (elapsedNanos / 1_000_000_000.0)
+
+    fun toEventFields(): Map<String, Any> = mapOf(
+      "bytes" to bytes.toDouble(),
+      "publishMs" to elapsedMs,
+      "throughputMBps" to throughputMBps
+    )
+  }
+
+  fun publishImage(context: Context, file: File): Published {
+    val values = ContentValues().apply {
+      put(MediaStore.MediaColumns.DISPLAY_NAME, file.name)
+      put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg")
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+        put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES)
+        put(MediaStore.MediaColumns.IS_PENDING, 1)
+      }
+    }
+    return publish(context, file, MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values)
+  }
+
+  fun publishVideo(context: Context, file: File): Published {
+    if (!file.exists()) throw IOException("Converted MP4 file not found.")
+
+    val values = ContentValues().apply {
+      put(MediaStore.Video.Media.TITLE, file.name)
+      put(MediaStore.Video.Media.DISPLAY_NAME, file.name)
+      put(MediaStore.Video.Media.MIME_TYPE, "video/mp4")
+      put(MediaStore.Video.Media.DATE_ADDED, System.currentTimeMillis() / 1000)
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+        put(MediaStore.Video.Media.IS_PENDING, 1)
+      }
+    }
+
+    return publish(context, file, MediaStore.Video.Media.EXTERNAL_CONTENT_URI, values)
+  }
+
+  // Inserts a pending entry, copies the file into it and then makes it visible. A failed copy
+  // removes the entry again so no empty item is left in the gallery.
+  private fun publish(context: Context, file: File, collection: Uri, values: ContentValues): Published {
+    val startedAt = System.nanoTime()
+    val resolver = context.contentResolver
+    val uri = resolver.insert(collection, values)
+      ?: throw IOException("Failed to create new MediaStore record.")
+    val bytes: Long
+    try {
+      bytes = resolver.openFileDescriptor(uri, "w")?.use { descriptor ->
+        FileInputStream(file).channel.use { source ->
+          FileOutputStream(descriptor.fileDescriptor).channel.use { target -> transfer(source, target) }
+        }
+      } ?: throw IOException("Failed to get file descriptor.")
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+        values.clear()
+        values.put(MediaStore.MediaColumns.IS_PENDING, 0)
+        resolver.update(uri, values, null, null)
+      }
+    } catch (e: Exception) {
+      resolver.delete(uri, null, null)
+      throw e
+    }
+    return Published(uri, bytes, System.nanoTime() - startedAt)
+  }
+
+  // transferTo may move fewer bytes than asked for, so loop until the whole file is across.
+  private fun transfer(source: FileChannel, target: FileChannel): Long {
+    val size = source.size()
+    var position = 0L
+    while (position < size) {
+      val moved = source.transferTo(position, size - position, target)
+      if (moved <= 0) throw IOException("Copy stalled at $position of $size bytes.")
+      position += moved
+    }
+    return size
+  }
+}
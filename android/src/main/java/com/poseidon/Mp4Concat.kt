@@ -0,0 +1,119 @@
+package com.poseidon
+
+import android.media.MediaCodec
+import android.media.MediaExtractor
+import android.media.MediaFormat
+import android.media.MediaMuxer
+import android.util.Log
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+
+/**
+ * Joins MP4 files recorded back to back by the same camera into one, without re-encoding: samples
+ * are copied from each part with MediaExtractor and written through one MediaMuxer, with each
+ * part's timestamps shifted to follow the previous one. The first part decides the tracks; a track
+ * MediaMuxer cannot hold (the device's G.711 audio, for one) is left out rather than failing the
+ * whole file. Blocking; call from a worker thread.
+ */
+object Mp4Concat {
+
+  private const val DEFAULT_SAMPLE_BYTES = 2 * 1024 * 1024
+  // Gap left between parts, about one frame at 25 fps.
+  private const val PART_GAP_US = 40_000L
+
+  fun concat(parts: List<File>, output: File) {
+    if (parts.isEmpty()) throw IOException("No parts to join.")
+    output.delete()
+    val muxer = MediaMuxer(output.absolutePath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4)
+    try {
+      val tracks = HashMap<String, Int>()
+      var sampleBytes = DEFAULT_SAMPLE_BYTES
+      val first = MediaExtractor().apply { setDataSource(parts[0].absolutePath) }
+      try {
+        for (index in 0 until first.trackCount) {
+          val format = first.getTrackFormat(index)
+          val kind = kindOf(format) ?: continue
+          if (tracks.containsKey(kind)) continue
+          if (format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
+            sampleBytes = maxOf(sampleBytes, format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE))
+          }
+          try {
+            tracks[kind] = muxer.addTrack(format)
+          } catch (e: Exception) {
+            Log.w("Mp4Concat", "Dropping unsupported $kind track: ${format.getString(MediaFormat.KEY_MIME)}")
+          }
+        }
+      } finally {
+        first.release()
+      }
+      if (!tracks.containsKey("video")) throw IOException("First part has no usable video track.")
+
+      muxer.start()
+      val buffer = ByteBuffer.allocateDirect(sampleBytes)
+      val info = MediaCodec.BufferInfo()
+      var offsetUs = 0L
+      parts.forEach { part ->
+        offsetUs = appendPart(part, muxer, tracks, buffer, info, offsetUs)
+      }
+      muxer.stop()
+    } catch (e: Exception) {
+      output.delete()
+      throw e
+    } finally {
+      muxer.release()
+    }
+  }
+
+  // Copies one part's samples and returns the offset the next part starts at.
+  private fun appendPart(
+    part: File,
+    muxer: MediaMuxer,
+    tracks: Map<String, Int>,
+    buffer: ByteBuffer,
+    info: MediaCodec.BufferInfo,
+    offsetUs: Long
+  ): Long {
+    val extractor = MediaExtractor()
+    try {
+      extractor.setDataSource(part.absolutePath)
+      val mapping = HashMap<Int, Int>()
+      for (index in 0 until extractor.trackCount) {
+        val target = kindOf(extractor.getTrackFormat(index))?.let { tracks[it] } ?: continue
+        if (mapping.containsValue(target)) continue
+        mapping[index] = target
+        extractor.selectTrack(index)
+      }
+
+      var baseUs = -1L
+      var endUs = offsetUs
+      while (true) {
+        val size = extractor.readSampleData(buffer, 0)
+        if (size < 0) break
+        val target = mapping[extractor.sampleTrackIndex]
+        if (target != null) {
+          val sampleUs = extractor.sampleTime
+          if (baseUs < 0) baseUs = sampleUs
+          val timeUs = offsetUs + maxOf(0L, sampleUs - baseUs)
+          val isSync = extractor.sampleFlags and MediaExtractor.SAMPLE_FLAG_SYNC != 0
+          info.set(0, size, timeUs, if (isSync) MediaCodec.BUFFER_FLAG_KEY_FRAME else 0)
+          muxer.writeSampleData(target, buffer, info)
+          endUs = maxOf(endUs, timeUs)
+        }
+        extractor.advance()
+      }
+      return endUs + PART_GAP_US
+    } finally {
+      extractor.release()
+    }
+  }
+
+  private fun kindOf(format: MediaFormat): String? {
+    val mime = format.getString(MediaFormat.KEY_MIME) ?: return null
+    return when {
+      mime.startsWith("video/") -> "video"
+      mime.startsWith("audio/") -> "audio"
+      else -> null
+    }
+  }
+}
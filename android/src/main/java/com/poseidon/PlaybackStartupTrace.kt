@@ -0,0 +1,99 @@
+package com.poseidon
+
+import android.os.SystemClock
+
+/**
+ * Monotonic timestamps for one stream start, from player creation to the first decoded frame.
+ * A trace is ready to report once both the play-success message and the first video size change
+ * have arrived, whichever comes last; a failure is reported straight away.
+ */
+class PlaybackStartupTrace {
+
+  private var playerCreatedAt = 0L
+  private var playerReused = false
+  private var surfaceBoundAt = 0L
+  private var streamStartedAt = 0L
+  private var firstFrameAt = 0L
+  private var playSuccessAt = 0L
+  private var mode = "live"
+  // Player creation and surface binding only count towards the first stream on a player.
+  private var isFirstStream = true
+  private var isReported = false
+
+  fun markPlayerCreated(reused: Boolean) {
+    playerCreatedAt = now()
+    playerReused = reused
+    surfaceBoundAt = 0L
+    streamStartedAt = 0L
+    firstFrameAt = 0L
+    playSuccessAt = 0L
+    isFirstStream = true
+    isReported = false
+  }
+
+  fun markSurfaceBound() {
+    if (!isReported) {
+      surfaceBoundAt = now()
+    }
+  }
+
+  fun markStreamStarted(mode: String) {
+    if (streamStartedAt != 0L) {
+      isFirstStream = false
+    }
+    this.mode = mode
+    streamStartedAt = now()
+    firstFrameAt = 0L
+    playSuccessAt = 0L
+    isReported = false
+  }
+
+  // Both return true when the trace has just become complete and should be reported.
+  fun markFirstFrame(): Boolean {
+    if (streamStartedAt == 0L || firstFrameAt != 0L) return false
+    firstFrameAt = now()
+    return isComplete()
+  }
+
+  fun markPlaySuccess(): Boolean {
+    if (streamStartedAt == 0L || playSuccessAt != 0L) return false
+    playSuccessAt = now()
+    return isComplete()
+  }
+
+  val hasFirstFrame: Boolean
+    get() = firstFrameAt != 0L
+
+  val timeToFirstFrameMs: Double
+    get() = if (firstFrameAt == 0L) 0.0 else millisBetween(streamStartedAt, firstFrameAt)
+
+  fun toEvent(streamFetchType: Int, error: String? = null): Map<String, Any?> {
+    isReported = true
+    val origin = if (isFirstStream && playerCreatedAt != 0L) playerCreatedAt else streamStartedAt
+    return mapOf(
+      "mode" to mode,
+      "playerReused" to (isFirstStream && playerReused),
+      // Milliseconds since the first mark in this trace; null when the step did not happen.
+      "playerCreatedMs" to if (isFirstStream && playerCreatedAt != 0L) 0.0 else null,
+      "surfaceBoundMs" to offset(origin, surfaceBoundAt),
+      "streamStartedMs" to offset(origin, streamStartedAt),
+      "firstFrameMs" to offset(origin, firstFrameAt),
+      "playSuccessMs" to offset(origin, playSuccessAt),
+      "timeToFirstFrameMs" to if (firstFrameAt == 0L) null else timeToFirstFrameMs,
+      // Raw EZPlayer.getStreamFetchType() value, identifying P2P, relay or direct streaming.
+      "streamFetchType" to streamFetchType,
+      "error" to error
+    )
+  }
+
+  private fun isComplete(): Boolean = !isReported && firstFrameAt != 0L && playSuccessAt != 0L
+
+  private fun offset(origin: Long, mark: Long): Double? {
+    if (mark == 0L || origin == 0L || mark < origin) return null
+    return millisBetween(origin, mark)
+  }
+
+  private fun millisBetween(start: Long, end: Long): Double = (end - start) / 1_000_000.0
+
+  private fun now(): Long = SystemClock.elapsedRealtimeNanos()
+}
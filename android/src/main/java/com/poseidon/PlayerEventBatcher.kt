@@ -0,0 +1,71 @@
+package com.poseidon
+
+import android.os.Handler
+
+/**
+ * Collects one view's player messages and playback progress between ticks and hands them to JS as
+ * a single event, instead of one bridge crossing per message. Repeats of a message code within a
+ * tick collapse into one entry with a count, and progress keeps only the latest time. Codes the
+ * view has not subscribed to are dropped before anything is built, so they are never serialized.
+ *
+ * Not thread-safe: the owning view calls it on its player thread, which is also [handler]'s.
+ */
+class PlayerEventBatcher(private val handler: Handler, private val deliver: (Map<String, Any?>) -> Unit) {
+
+  // 0 turns batching off; the view then sends each message as it arrives.
+  var intervalMs = 0L
+    set(value) {
+      field = maxOf(0L, value)
+      if (field == 0L) flush()
+    }
+
+  // Message codes that reach JS at all; null subscribes to every code.
+  var codes: Set<Int>? = null
+
+  val isEnabled: Boolean
+    get() = intervalMs > 0
+
+  private val counts = LinkedHashMap<Int, Int>()
+  private var currentTime: Long? = null
+  private var isScheduled = false
+
+  private val tick = Runnable {
+    isScheduled = false
+    flush()
+  }
+
+  fun isSubscribed(code: Int): Boolean = codes?.contains(code) ?: true
+
+  fun addMessage(code: Int) {
+    counts[code] = (counts[code] ?: 0) + 1
+    schedule()
+  }
+
+  fun setCurrentTime(time: Long) {
+    currentTime = time
+    schedule()
+  }
+
+  fun flush() {
+    if (counts.isEmpty() && currentTime == null) return
+    val messages = counts.map { (code, count) -> mapOf("messageCode" to code, "count" to count) }
+    val event = mapOf("messages" to messages, "currentTime" to currentTime?.toDouble())
+    counts.clear()
+    currentTime = null
+    deliver(event)
+  }
+
+  // Drops whatever is pending, e.g. when the view's player goes away.
+  fun clear() {
+    handler.removeCallbacks(tick)
+    isScheduled = false
+    counts.clear()
+    currentTime = null
+  }
+
+  private fun schedule() {
+    if (isScheduled) return
+    isScheduled = true
+    handler.postDelayed(tick, intervalMs)
+  }
+}
@@ -0,0 +1,164 @@
+package com.poseidon
+
+import android.os.Handler
+import android.os.Looper
+import android.os.Message
+import android.util.Log
+import com.videogo.openapi.EZPlayer
+
+/**
+ * Process-wide pool of recently detached players, keyed by (deviceSerial, cameraNo).
+ *
+ * A view that leaves the window parks its player here instead of releasing it. If a view for the
+ * same camera attaches again before the player is evicted it re-binds the parked player to its
+ * new surface, skipping player creation and, while the stream grace period lasts, the whole
+ * stream setup. Parked players are evicted least recently parked first once there are more than
+ * [maxParkedPlayers], and the oldest parked streams are stopped once more than [maxLiveStreams]
+ * are still running. Safe to call from any thread: views park and acquire from their player
+ * threads and the grid from the main thread. The pool lock only guards the map; stopping and
+ * releasing evicted players happens outside it on a player thread, so the main looper never waits
+ * behind another player's native teardown. Detaching a parked player's surface is posted to the
+ * main thread, where surface binding lives.
+ */
+object PlayerPool {
+
+  data class Key(val deviceSerial: String, val cameraNo: Int)
+
+  class Parked(val player: EZPlayer, isStreaming: Boolean) {
+    @Volatile
+    var isStreaming = isStreaming
+      internal set
+
+    // Guarded by the entry's own monitor, which a stream stop holds while it runs, so a view
+    // taking the player back sees the stop's outcome.
+    internal var isAcquired = false
+    internal var stopStreamRunnable: Runnable? = null
+    internal var evictRunnable: Runnable? = null
+  }
+
+  @Volatile
+  var maxParkedPlayers = 4
+
+  @Volatile
+  var maxLiveStreams = 2
+
+  @Volatile
+  var idleTimeoutMs = 60_000L
+
+  private val timerHandler = Handler(PlayerThreads.nextLooper())
+  private val mainHandler = Handler(Looper.getMainLooper())
+
+  // Parked players still post messages; they are dropped until a view takes the player back.
+  private val parkedMessageSink = object : Handler(timerHandler.looper) {
+    override fun handleMessage(msg: Message) {}
+  }
+
+  // Insertion order doubles as park order, so the first entry is the eviction candidate. Guarded
+  // by the pool's monitor.
+  private val parked = LinkedHashMap<Key, Parked>()
+
+  fun park(key: Key, player: EZPlayer, isStreaming: Boolean, streamGraceMs: Long) {
+    player.setHandler(parkedMessageSink)
+    val keepStreaming = isStreaming && streamGraceMs > 0
+    if (isStreaming && !keepStreaming) {
+      // Nobody can acquire the player yet, so this needs no lock.
+      player.stopRealPlay()
+    }
+
+    val entry = Parked(player, keepStreaming)
+    val (toStop, toDestroy) = synchronized(this) {
+      val replaced = parked.remove(key)
+      if (keepStreaming) {
+        entry.stopStreamRunnable = Runnable { stopStream(entry) }.also { timerHandler.postDelayed(it, streamGraceMs) }
+      }
+      entry.evictRunnable = Runnable {
+        val evicted = synchronized(this) { parked[key] === entry && parked.remove(key) != null }
+        if (evicted) destroy(entry)
+      }.also { timerHandler.postDelayed(it, idleTimeoutMs) }
+      parked[key] = entry
+      Log.d("PlayerPool", "Parked player for $key (streaming: $keepStreaming, pooled: ${parked.size})")
+      val (streams, evicted) = trim()
+      streams to evicted + listOfNotNull(replaced)
+    }
+    teardown(toStop, toDestroy)
+
+    val detachSurface = Runnable {
+      // A player taken back in the meantime is bound to its new owner's surface instead.
+      if (synchronized(this) { parked[key] === entry }) player.setSurfaceHold(null)
+    }
+    if (Looper.myLooper() == Looper.getMainLooper()) detachSurface.run() else mainHandler.post(detachSurface)
+  }
+
+  fun acquire(key: Key): Parked? {
+    val entry = synchronized(this) { parked.remove(key) } ?: return null
+    cancelTimers(entry)
+    // Waits for a stop of this very player that is already under way, never for another one.
+    synchronized(entry) { entry.isAcquired = true }
+    Log.d("PlayerPool", "Reusing parked player for $key (streaming: ${entry.isStreaming})")
+    return entry
+  }
+
+  fun clear() {
+    timerHandler.post {
+      val entries = synchronized(this) { parked.values.toList().also { parked.clear() } }
+      entries.forEach { destroy(it) }
+    }
+  }
+
+  fun trimAsync() {
+    timerHandler.post {
+      val (toStop, toDestroy) = synchronized(this) { trim() }
+      teardown(toStop, toDestroy)
+    }
+  }
+
+  // Under the pool lock: picks the streams to stop and takes the players to destroy out of the
+  // map. The caller hands both to teardown once it has let go of the lock.
+  private fun trim(): Pair<List<Parked>, List<Parked>> {
+    val streaming = parked.values.filter { it.isStreaming }
+    val toStop = streaming.take(maxOf(0, streaming.size - maxLiveStreams))
+
+    val toDestroy = ArrayList<Parked>()
+    while (parked.size > maxParkedPlayers) {
+      val eldest = parked.entries.first()
+      parked.remove(eldest.key)
+      toDestroy.add(eldest.value)
+    }
+    return toStop to toDestroy
+  }
+
+  private fun teardown(toStop: List<Parked>, toDestroy: List<Parked>) {
+    if (toStop.isEmpty() && toDestroy.isEmpty()) return
+    timerHandler.post {
+      toStop.forEach { stopStream(it) }
+      toDestroy.forEach { destroy(it) }
+    }
+  }
+
+  // Player thread only.
+  private fun stopStream(entry: Parked) {
+    synchronized(entry) {
+      // A player already taken back keeps its stream; its new owner decides.
+      if (!entry.isStreaming || entry.isAcquired) return
+      entry.isStreaming = false
+      entry.stopStreamRunnable?.let { timerHandler.removeCallbacks(it) }
+      entry.player.stopRealPlay()
+    }
+  }
+
+  private fun cancelTimers(entry: Parked) {
+    entry.stopStreamRunnable?.let { timerHandler.removeCallbacks(it) }
+    entry.evictRunnable?.let { timerHandler.removeCallbacks(it) }
+  }
+
+  // Player thread only, for entries already out of the map.
+  private fun destroy(entry: Parked) {
+    cancelTimers(entry)
+    synchronized(entry) {
+      if (entry.isStreaming) {
+        entry.player.stopRealPlay()
+      }
+      entry.player.release()
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package com.poseidon
+
+import android.os.HandlerThread
+import android.os.Looper
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Background loopers that carry EZPlayer traffic: SDK messages and control calls (start/stop,
+ * pause, seek, sound). Each view is pinned to one looper, so its own calls and messages stay in
+ * order, while views spread round-robin over the threads so a grid of players neither queues on
+ * one thread nor on the main looper.
+ */
+object PlayerThreads {
+
+  private val threads = Array(maxOf(2, minOf(4, Runtime.getRuntime().availableProcessors() / 2))) { index ->
+    HandlerThread("ExpoEzviz-player-${index + 1}").apply { start() }
+  }
+  private val next = AtomicInteger()
+
+  fun nextLooper(): Looper = threads[Math.floorMod(next.getAndIncrement(), threads.size)].looper
+}
@@ -0,0 +1,69 @@
+package com.poseidon
+
+import java.io.File
+import java.io.RandomAccessFile
+
+/**
+ * Reads how much media time a growing MPEG program stream file already covers, by comparing the
+ * system clock reference (SCR) of the first and of the last pack header. Device downloads do not
+ * report progress, but the .ps file they write carries its own clock, so dividing the covered
+ * time by the record's duration gives a real percentage. Only the head and the last few KB of the
+ * file are read per call.
+ */
+object PsClock {
+
+  private const val SCAN_BYTES = 64 * 1024
+  private const val SCR_TICKS_PER_MS = 90L
+
+  // Milliseconds between the first and the last pack in the file, or null if no pack is found.
+  fun coveredMs(file: File): Long? {
+    return try {
+      RandomAccessFile(file, "r").use { input ->
+        val length = input.length()
+        if (length <= 0) return null
+        val buffer = ByteArray(minOf(SCAN_BYTES.toLong(), length).toInt())
+
+        input.seek(0)
+        input.readFully(buffer)
+        val first = firstScr(buffer) ?: return null
+
+        input.seek(length - buffer.size)
+        input.readFully(buffer)
+        val last = lastScr(buffer) ?: return null
+        if (last < first) null else (last - first) / SCR_TICKS_PER_MS
+      }
+    } catch (e: Exception) {
+      null
+    }
+  }
+
+  private fun firstScr(buffer: ByteArray): Long? {
+    for (i in 0..buffer.size - 10) {
+      if (isPackHeader(buffer, i)) return scrAt(buffer, i)
+    }
+    return null
+  }
+
+  private fun lastScr(buffer: ByteArray): Long? {
+    for (i in buffer.size - 10 downTo 0) {
+      if (isPackHeader(buffer, i)) return scrAt(buffer, i)
+    }
+    return null
+  }
+
+  // 00 00 01 BA followed by the MPEG-2 '01' marker bits.
+  private fun isPackHeader(b: ByteArray, i: Int): Boolean {
+    return b[i].toInt() == 0 && b[i + 1].toInt() == 0 && b[i + 2].toInt() == 1 &&
+      (b[i + 3].toInt() and 0xFF) == 0xBA && (b[i + 4].toInt() and 0xC4) == 0x44
+  }
+
+  private fun scrAt(b: ByteArray, i: Int): Long {
+    val b4 = (b[i + 4].toInt() and 0xFF).toLong()
+    val b5 = (b[i + 5].toInt() and 0xFF).toLong()
+    val b6 = (b[i + 6].toInt() and 0xFF).toLong()
+    val b7 = (b[i + 7].toInt() and 0xFF).toLong()
+    val b8 = (b[i + 8].toInt() and 0xFF).toLong()
+    return ((b4 and 0x38) shl 27) or ((b4 and 0x03) shl 28) or (b5 shl 20) or
+      ((b6 and 0xF8) shl 12) or ((b6 and 0x03) shl 13) or (b7 shl 5) or (b8 shr 3)
+  }
+}
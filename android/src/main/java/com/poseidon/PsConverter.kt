@@ -0,0 +1,217 @@
+package com.poseidon
+
+import android.os.Handler
+import android.os.HandlerThread
+import android.util.Log
+import com.ez.stream.SystemTransform
+import com.ez.stream.SystemTransformSim
+import java.io.File
+import java.util.UUID
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Converts the SDK's .ps recordings to MP4. The transformer runs on its own native thread once
+ * started, so instead of parking a thread per file in a getPercent()/sleep loop (as
+ * EZPlayer.tryTransPsToMp4 does), one poll thread reads the percentage of every active conversion
+ * on a timer. The blocking native calls (create/start, stop/release) run on a small worker pool,
+ * at most [maxParallel] files convert at once, and at most [MAX_QUEUED] more may wait.
+ *
+ * Callbacks arrive on the poll thread (progress) or a worker (completion); neither is the main
+ * thread.
+ */
+object PsConverter {
+
+  interface Callback {
+    fun onProgress(task: Task)
+    // code is null on success, otherwise conversion-error, conversion-cancelled or conversion-queue-full.
+    fun onComplete(task: Task, code: String?)
+  }
+
+  class Task internal constructor(val id: String, val source: File, val target: File, internal val verifyCode: String?, internal val callback: Callback) {
+    // 0.0 to 1.0.
+    @Volatile
+    var progress = 0.0
+      internal set
+
+    @Volatile
+    internal var isCancelled = false
+
+    // Only touched on the poll thread once the transformer has started.
+    internal var trans: SystemTransformSim? = null
+    internal var isFinished = false
+  }
+
+  private const val POLL_INTERVAL_MS = 100L
+  const val MAX_QUEUED = 32
+
+  @Volatile
+  var maxParallel = 2
+    set(value) {
+      field = value.coerceIn(1, SdkExecutor.MAX_PARALLELISM)
+      workers.setParallelism(field)
+      handler.post { pump() }
+    }
+
+  private val thread = HandlerThread("ExpoEzviz-convert").apply { start() }
+  private val handler = Handler(thread.looper)
+  private val workers = SdkExecutor(parallelism = 2)
+
+  // Both only touched on the poll thread.
+  private val pending = ArrayDeque<Task>()
+  private val active = LinkedHashSet<Task>()
+  // Queued plus active; read from any thread to enforce the queue bound.
+  private val outstanding = AtomicInteger()
+
+  private val pollRunnable = object : Runnable {
+    override fun run() {
+      active.toList().forEach { poll(it) }
+      if (active.isNotEmpty()) handler.postDelayed(this, POLL_INTERVAL_MS)
+    }
+  }
+
+  // Queues one conversion. When the queue is full the task completes straight away with
+  // conversion-queue-full.
+  fun submit(source: File, target: File, verifyCode: String?, callback: Callback): Task {
+    val task = Task(UUID.randomUUID().toString(), source, target, verifyCode, callback)
+    if (outstanding.incrementAndGet() > maxParallel + MAX_QUEUED) {
+      outstanding.decrementAndGet()
+      Log.w("PsConverter", "Queue full, rejecting ${source.name}")
+      workers.execute(SdkPriority.BACKGROUND) { callback.onComplete(task, "conversion-queue-full") }
+      return task
+    }
+    handler.post {
+      pending.addLast(task)
+      pump()
+    }
+    return task
+  }
+
+  // Converts several files, at most maxParallel at a time like any other submission. onQueued sees
+  // each task before any of the batch can complete; onProgress gets the mean progress of the
+  // batch; onComplete gets one error code (or null) per source, in order, after the last file
+  // finishes.
+  fun submitBatch(
+    files: List<Pair<File, File>>,
+    verifyCode: String?,
+    onQueued: (Task) -> Unit = {},
+    onProgress: (Double) -> Unit,
+    onComplete: (List<String?>) -> Unit
+  ): List<Task> {
+    if (files.isEmpty()) {
+      onComplete(emptyList())
+      return emptyList()
+    }
+    val codes = arrayOfNulls<String>(files.size)
+    val remaining = AtomicInteger(files.size)
+    val tasks = ArrayList<Task>(files.size)
+    val callback = object : Callback {
+      override fun onProgress(task: Task) {
+        onProgress(synchronized(codes) { tasks.sumOf { it.progress } } / files.size)
+      }
+
+      override fun onComplete(task: Task, code: String?) {
+        synchronized(codes) { codes[tasks.indexOf(task)] = code }
+        if (remaining.decrementAndGet() == 0) onComplete(codes.toList())
+      }
+    }
+    // Tasks are listed before any of them can report back.
+    synchronized(codes) {
+      files.forEach { (source, target) -> tasks.add(submit(source, target, verifyCode, callback).also(onQueued)) }
+    }
+    return tasks
+  }
+
+  // Drops a queued conversion, or stops and releases a running transformer.
+  fun cancel(task: Task) {
+    task.isCancelled = true
+    handler.post {
+      if (pending.remove(task)) {
+        finish(task, "conversion-cancelled")
+      } else if (task.trans != null) {
+        finish(task, "conversion-cancelled")
+      }
+      // A task still starting on a worker sees isCancelled when it gets back to this thread.
+    }
+  }
+
+  private fun pump() {
+    while (active.size < maxParallel && pending.isNotEmpty()) {
+      val task = pending.removeFirst()
+      active.add(task)
+      if (active.size == 1) {
+        handler.removeCallbacks(pollRunnable)
+        handler.postDelayed(pollRunnable, POLL_INTERVAL_MS)
+      }
+      workers.execute(SdkPriority.BACKGROUND) { begin(task) }
+    }
+  }
+
+  // Runs on a worker.
+  private fun begin(task: Task) {
+    var trans: SystemTransformSim? = null
+    try {
+      task.target.parentFile?.mkdirs()
+      trans = SystemTransformSim.create(SystemTransform.TRANS_SYSTEM_MPEG4, task.source.absolutePath, task.target.absolutePath)
+      val result = trans.start(task.verifyCode)
+      if (result != 0) {
+        Log.e("PsConverter", "Failed to start conversion of ${task.source.name}: $result")
+        trans.release()
+        trans = null
+      }
+    } catch (e: Exception) {
+      Log.e("PsConverter", "Failed to start conversion of ${task.source.name}: ${e.message}")
+      trans?.release()
+      trans = null
+    }
+    handler.post {
+      task.trans = trans
+      when {
+        trans == null -> finish(task, "conversion-error")
+        task.isCancelled -> finish(task, "conversion-cancelled")
+      }
+    }
+  }
+
+  private fun poll(task: Task) {
+    val trans = task.trans ?: return
+    val percent = try {
+      trans.getPercent()
+    } catch (e: Exception) {
+      Log.e("PsConverter", "Conversion of ${task.source.name} failed: ${e.message}")
+      null
+    }
+    when {
+      percent == null || percent.ret != 0 || percent.percent == -1 -> finish(task, "conversion-error")
+      percent.percent == 100 -> {
+        task.progress = 1.0
+        finish(task, null)
+      }
+      percent.percent / 100.0 != task.progress -> {
+        task.progress = percent.percent / 100.0
+        task.callback.onProgress(task)
+      }
+    }
+  }
+
+  // Runs on the poll thread. Stopping a transformer can block while its native thread winds down,
+  // so that and the completion callback go to a worker.
+  private fun finish(task: Task, code: String?) {
+    if (task.isFinished) return
+    task.isFinished = true
+    active.remove(task)
+    outstanding.decrementAndGet()
+    val trans = task.trans
+    task.trans = null
+    workers.execute(SdkPriority.USER) {
+      try {
+        trans?.stop()
+        trans?.release()
+      } catch (e: Exception) {
+        Log.w("PsConverter", "Failed to release transformer: ${e.message}")
+      }
+      if (code != null) task.target.delete()
+      task.callback.onComplete(task, code)
+    }
+    pump()
+  }
+}
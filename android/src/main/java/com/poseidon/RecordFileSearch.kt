@@ -0,0 +1,69 @@
+package com.poseidon
+
+import com.videogo.openapi.EZGlobalSDK
+import java.time.ZoneOffset
+import java.time.ZonedDateTime
+import java.time.temporal.ChronoUnit
+import java.util.GregorianCalendar
+
+// Helpers for searchRecordFileFromDevice. The SDK only accepts windows of up to 24 hours, so
+// ranges are cut into UTC days, searched (or read from RecordIndexCache) separately and
+// stitched back together.
+object RecordFileSearch {
+  const val MAX_WINDOW_DAYS = 31L
+  const val MAX_PARALLEL_SLICES = 3
+  private const val DAY_MS = 24L * 60 * 60 * 1000
+
+  // UTC days touched by [beginTime, endTime), each returned as its midnight. Searching whole days
+  // keeps every slice within the SDK limit and lines slices up with RecordIndexCache entries.
+  fun daysInWindow(beginTime: ZonedDateTime, endTime: ZonedDateTime): List<ZonedDateTime> {
+    val days = mutableListOf<ZonedDateTime>()
+    var day = beginTime.withZoneSameInstant(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS)
+    do {
+      days.add(day)
+      day = day.plusDays(1)
+    } while (day.isBefore(endTime))
+    return days
+  }
+
+  fun searchSlice(deviceSerial: String, cameraNo: Int, beginTime: ZonedDateTime, endTime: ZonedDateTime): List<ExpoDeviceRecordFile> {
+    return EZGlobalSDK.getInstance()
+      .searchRecordFileFromDevice(deviceSerial, cameraNo, GregorianCalendar.from(beginTime), GregorianCalendar.from(endTime))
+      .orEmpty()
+      .map { record ->
+        ExpoDeviceRecordFile().apply {
+          this.startTime = record.startTime?.timeInMillis ?: 0
+          this.stopTime = record.stopTime?.timeInMillis ?: 0
+        }
+      }
+  }
+
+  fun overlapping(records: List<ExpoDeviceRecordFile>, beginTime: ZonedDateTime, endTime: ZonedDateTime): List<ExpoDeviceRecordFile> {
+    val beginMs = beginTime.toInstant().toEpochMilli()
+    val endMs = endTime.toInstant().toEpochMilli()
+    return records.filter { it.stopTime > beginMs && it.startTime < endMs }
+  }
+
+  // A recording that spans a slice boundary comes back from both neighbouring slices, either
+  // whole (the same segment twice) or cut at the UTC midnight between them. Sort by start time,
+  // drop repeats of a segment (keeping the longest stop, as a top-up sees the last segment grow)
+  // and join pieces cut at a midnight. Other overlaps are distinct device segments and are left
+  // as the device reported them.
+  fun mergeRecords(records: List<ExpoDeviceRecordFile>): List<ExpoDeviceRecordFile> {
+    val merged = mutableListOf<ExpoDeviceRecordFile>()
+    records.sortedWith(compareBy({ it.startTime }, { it.stopTime })).forEach { record ->
+      val last = merged.lastOrNull()
+      val isRepeat = last != null && record.startTime == last.startTime
+      val isSliceSplit = last != null && record.startTime == last.stopTime && record.startTime % DAY_MS == 0L
+      if (last != null && (isRepeat || isSliceSplit)) {
+        last.stopTime = maxOf(last.stopTime, record.stopTime)
+      } else {
+        merged.add(ExpoDeviceRecordFile().apply {
+          this.startTime = record.startTime
+          this.stopTime = record.stopTime
+        })
+      }
+    }
+    return merged
+  }
+}
@@ -0,0 +1,185 @@
+package com.poseidon
+
+import android.util.Log
+import java.io.DataInputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.IOException
+import java.time.Instant
+import java.time.ZonedDateTime
+import java.time.format.DateTimeFormatter
+
+/**
+ * On-disk index of SD card recordings, one file per (deviceSerial, cameraNo, UTC day).
+ *
+ * Days that ended more than [SETTLE_MS] ago are treated as immutable and never searched again,
+ * unless the search found nothing: an empty day may just be a card that was not mounted yet, so it
+ * is searched again after [EMPTY_DAY_TTL_MS].
+ * The current day is topped up incrementally from the last known stopTime, at most once per
+ * [REFRESH_INTERVAL_MS]. Files are evicted least recently used first once the index grows past
+ * [maxBytes].
+ */
+class RecordIndexCache(private val directory: File, private val maxBytes: Long = DEFAULT_MAX_BYTES) {
+
+  private class DayEntry(val records: List<ExpoDeviceRecordFile>, val syncedAt: Long)
+
+  private val lock = Any()
+  // File name -> size in bytes, in access order so the eldest entry is the LRU victim.
+  private val files = LinkedHashMap<String, Long>(16, 0.75f, true)
+  private var totalBytes = 0L
+  private var loaded = false
+
+  fun recordsForDay(
+    deviceSerial: String,
+    cameraNo: Int,
+    dayStart: ZonedDateTime,
+    search: (ZonedDateTime, ZonedDateTime) -> List<ExpoDeviceRecordFile>
+  ): List<ExpoDeviceRecordFile> {
+    val dayStartMs = dayStart.toInstant().toEpochMilli()
+    val dayEnd = dayStart.plusDays(1)
+    val dayEndMs = dayEnd.toInstant().toEpochMilli()
+    val now = System.currentTimeMillis()
+    if (dayStartMs > now) {
+      return emptyList()
+    }
+
+    val name = fileName(deviceSerial, cameraNo, dayStart)
+    val cached = read(name)
+    if (cached != null) {
+      val settled = cached.syncedAt >= dayEndMs + SETTLE_MS
+      if (settled && cached.records.isNotEmpty()) return cached.records
+      val ttl = if (settled) EMPTY_DAY_TTL_MS else REFRESH_INTERVAL_MS
+      if (now - cached.syncedAt < ttl) return cached.records
+    }
+
+    // The last known segment may still be growing, so search from where it stopped and let the
+    // merge extend it rather than re-reading the whole day.
+    val lastStopMs = cached?.records?.lastOrNull()?.stopTime
+    val searchFrom = if (lastStopMs != null && lastStopMs > dayStartMs) {
+      ZonedDateTime.ofInstant(Instant.ofEpochMilli(lastStopMs), dayStart.zone)
+    } else {
+      dayStart
+    }
+    val fetched = search(searchFrom, dayEnd)
+    val records = RecordFileSearch.mergeRecords(cached?.records.orEmpty() + fetched)
+    write(name, DayEntry(records, now))
+    return records
+  }
+
+  fun clear(deviceSerial: String? = null) {
+    synchronized(lock) {
+      ensureLoaded()
+      val prefix = deviceSerial?.let { "${sanitize(it)}_" }
+      val iterator = files.entries.iterator()
+      while (iterator.hasNext()) {
+        val (name, size) = iterator.next()
+        if (prefix == null || name.startsWith(prefix)) {
+          File(directory, name).delete()
+          totalBytes -= size
+          iterator.remove()
+        }
+      }
+    }
+  }
+
+  private fun read(name: String): DayEntry? {
+    synchronized(lock) {
+      ensureLoaded()
+      if (files[name] == null) return null
+      val file = File(directory, name)
+      return try {
+        DataInputStream(file.inputStream().buffered()).use { input ->
+          if (input.readInt() != FORMAT_VERSION) throw IOException("Unknown record index format.")
+          val syncedAt = input.readLong()
+          val count = input.readInt()
+          val records = List(count) {
+            ExpoDeviceRecordFile().apply {
+              this.startTime = input.readLong()
+              this.stopTime = input.readLong()
+            }
+          }
+          file.setLastModified(System.currentTimeMillis())
+          DayEntry(records, syncedAt)
+        }
+      } catch (e: IOException) {
+        Log.w("RecordIndexCache", "Dropping unreadable index file $name: ${e.localizedMessage}")
+        file.delete()
+        files.remove(name)?.let { totalBytes -= it }
+        null
+      }
+    }
+  }
+
+  private fun write(name: String, entry: DayEntry) {
+    synchronized(lock) {
+      ensureLoaded()
+      val file = File(directory, name)
+      val temp = File(directory, "$name.tmp")
+      try {
+        DataOutputStream(temp.outputStream().buffered()).use { output ->
+          output.writeInt(FORMAT_VERSION)
+          output.writeLong(entry.syncedAt)
+          output.writeInt(entry.records.size)
+          entry.records.forEach { record ->
+            output.writeLong(record.startTime)
+            output.writeLong(record.stopTime)
+          }
+        }
+        if (!temp.renameTo(file)) throw IOException("Could not replace $name.")
+      } catch (e: IOException) {
+        Log.w("RecordIndexCache", "Failed to write index file $name: ${e.localizedMessage}")
+        temp.delete()
+        return
+      }
+      files.remove(name)?.let { totalBytes -= it }
+      files[name] = file.length()
+      totalBytes += file.length()
+      evict()
+    }
+  }
+
+  private fun evict() {
+    val iterator = files.entries.iterator()
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      val (name, size) = iterator.next()
+      File(directory, name).delete()
+      totalBytes -= size
+      iterator.remove()
+    }
+  }
+
+  // Rebuilds the LRU order from file modification times the first time the cache is touched.
+  private fun ensureLoaded() {
+    if (loaded) return
+    loaded = true
+    if (!directory.exists() && !directory.mkdirs()) {
+      Log.w("RecordIndexCache", "Could not create ${directory.absolutePath}")
+      return
+    }
+    directory.listFiles()
+      .orEmpty()
+      .filter { it.isFile && it.name.endsWith(".idx") }
+      .sortedBy { it.lastModified() }
+      .forEach { file ->
+        files[file.name] = file.length()
+        totalBytes += file.length()
+      }
+    evict()
+  }
+
+  private fun fileName(deviceSerial: String, cameraNo: Int, dayStart: ZonedDateTime): String {
+    return "${sanitize(deviceSerial)}_${cameraNo}_${DAY_FORMAT.format(dayStart)}.idx"
+  }
+
+  private fun sanitize(value: String): String = value.replace(Regex("[^A-Za-z0-9]"), "-")
+
+  companion object {
+    const val DEFAULT_MAX_BYTES = 8L * 1024 * 1024
+    const val REFRESH_INTERVAL_MS = 30_000L
+    // Devices can flush the final segment of a day a little after midnight.
+    const val SETTLE_MS = 10L * 60 * 1000
+    const val EMPTY_DAY_TTL_MS = 5L * 60 * 1000
+    private const val FORMAT_VERSION = 1
+    private val DAY_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd")
+  }
+}
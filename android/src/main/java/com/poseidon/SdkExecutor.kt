@@ -0,0 +1,171 @@
+package com.poseidon
+
+import android.util.Log
+import expo.modules.kotlin.Promise
+import java.util.concurrent.CancellationException
+import java.util.concurrent.PriorityBlockingQueue
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+// Lower ordinal runs first. USER covers anything a person is waiting on (playback lookups,
+// device mutations); BACKGROUND covers refreshes that can wait behind them.
+enum class SdkPriority {
+  USER,
+  BACKGROUND
+}
+
+/**
+ * Bounded worker pool shared by every SDK call the module makes. Replaces the
+ * thread-per-call pattern so a dashboard refreshing hundreds of devices queues
+ * work instead of spawning hundreds of threads.
+ */
+class SdkExecutor(parallelism: Int = DEFAULT_PARALLELISM) {
+
+  private val sequence = AtomicLong()
+
+  private val pool = ThreadPoolExecutor(
+    parallelism,
+    parallelism,
+    KEEP_ALIVE_SECONDS,
+    TimeUnit.SECONDS,
+    PriorityBlockingQueue<Runnable>(),
+    object : ThreadFactory {
+      private val count = AtomicInteger()
+      override fun newThread(r: Runnable): Thread {
+        return Thread(r, "ExpoEzviz-sdk-${count.incrementAndGet()}").apply { isDaemon = true }
+      }
+    }
+  ).apply { allowCoreThreadTimeOut(true) }
+
+  inner class Job(
+    val priority: SdkPriority,
+    private val onCancel: (() -> Unit)?,
+    private val block: () -> Unit
+  ) : Runnable, Comparable<Job> {
+    private val order = sequence.incrementAndGet()
+    val enqueuedAt = System.nanoTime()
+
+    @Volatile
+    var isCancelled = false
+      private set
+
+    // Only a job still in the queue can be cancelled; once a worker has taken it, it runs.
+    fun cancel(): Boolean {
+      if (isCancelled || !pool.remove(this)) return false
+      isCancelled = true
+      onCancel?.invoke()
+      return true
+    }
+
+    override fun run() {
+      if (isCancelled) return
+      EzvizMetrics.recordQueueWait(priority.name.lowercase(), System.nanoTime() - enqueuedAt)
+      block()
+    }
+
+    override fun compareTo(other: Job): Int {
+      val byPriority = priority.compareTo(other.priority)
+      return if (byPriority != 0) byPriority else order.compareTo(other.order)
+    }
+  }
+
+  val parallelism: Int
+    get() = pool.maximumPoolSize
+
+  fun execute(priority: SdkPriority = SdkPriority.USER, onCancel: (() -> Unit)? = null, block: () -> Unit): Job {
+    val job = Job(priority, onCancel, block)
+    pool.execute(job)
+    return job
+  }
+
+  // Convenience overload for AsyncFunctions: a job dropped from the queue rejects its promise
+  // so JS never waits on work that will not run.
+  fun execute(promise: Promise, priority: SdkPriority = SdkPriority.USER, block: () -> Unit): Job {
+    return execute(priority, { promise.reject("request-cancelled", "The request was cancelled before it started.", null) }, block)
+  }
+
+  // Runs task over items with at most maxParallel in flight, without parking a worker thread to
+  // wait on the others: each finished item schedules the next one. onResult is called once per
+  // item (from a worker thread) and onComplete once after the last.
+  fun <T, R> fanOut(
+    items: List<T>,
+    maxParallel: Int,
+    priority: SdkPriority,
+    task: (T) -> R,
+    onResult: (Int, Result<R>) -> Unit,
+    onComplete: () -> Unit
+  ) {
+    if (items.isEmpty()) {
+      onComplete()
+      return
+    }
+    val next = AtomicInteger(0)
+    val remaining = AtomicInteger(items.size)
+
+    fun finish(index: Int, result: Result<R>) {
+      onResult(index, result)
+      if (remaining.decrementAndGet() == 0) {
+        onComplete()
+      }
+    }
+
+    // Once one item is cancelled the rest are failed in place rather than queued behind it.
+    fun cancelRemaining(index: Int) {
+      var current = index
+      while (current < items.size) {
+        finish(current, Result.failure(CancellationException("Cancelled before it started.")))
+        current = next.getAndIncrement()
+      }
+    }
+
+    fun launchNext() {
+      val index = next.getAndIncrement()
+      if (index >= items.size) return
+      execute(priority, { cancelRemaining(index) }) {
+        finish(index, runCatching { task(items[index]) })
+        launchNext()
+      }
+    }
+
+    repeat(maxParallel.coerceIn(1, items.size)) { launchNext() }
+  }
+
+  fun setParallelism(value: Int) {
+    val size = value.coerceIn(1, MAX_PARALLELISM)
+    // Core size may never exceed max size, so grow max first and shrink core first.
+    if (size > pool.maximumPoolSize) {
+      pool.maximumPoolSize = size
+      pool.corePoolSize = size
+    } else {
+      pool.corePoolSize = size
+      pool.maximumPoolSize = size
+    }
+    Log.d("SdkExecutor", "Parallelism set to $size")
+  }
+
+  // Drops queued jobs that have not started yet. Jobs already running finish normally.
+  fun cancelPending(priority: SdkPriority? = null): Int {
+    var cancelled = 0
+    pool.queue.toTypedArray().forEach { runnable ->
+      val job = runnable as? Job ?: return@forEach
+      if ((priority == null || job.priority == priority) && job.cancel()) {
+        cancelled++
+      }
+    }
+    return cancelled
+  }
+
+  fun shutdown() {
+    cancelPending()
+    pool.shutdown()
+  }
+
+  companion object {
+    const val DEFAULT_PARALLELISM = 4
+    const val MAX_PARALLELISM = 16
+    private const val KEEP_ALIVE_SECONDS = 30L
+  }
+}
@@ -0,0 +1,143 @@
+package com.poseidon
+
+import android.os.Handler
+import android.os.SystemClock
+import android.util.Log
+import com.videogo.openapi.EZPlayer
+import java.util.Calendar
+
+/**
+ * Latest-wins seeking for remote playback. Every EZPlayer.seekPlayback restarts the device stream,
+ * so dragging a timeline must not send one seek per touch event. Requests are held for
+ * [debounceMs] and only the newest target is sent; a request that arrives while an earlier seek
+ * is still landing supersedes it, and the earlier one is neither waited for nor reported.
+ *
+ * After a seek is sent the player's OSD clock is polled until it shows the seek took effect: the
+ * clock went blank or jumped away from where it was running before the seek. Its time then is
+ * reported as where playback actually landed (a key frame, or the next recording when the target
+ * falls in a gap), together with the latency from the request.
+ * Player thread only; [handler] must run on the owning view's player thread.
+ */
+class SeekController(
+  private val handler: Handler,
+  private val playerProvider: () -> EZPlayer?,
+  private val report: (Map<String, Any?>) -> Unit
+) {
+
+  private class Seek(val targetMs: Long, val requestedAt: Long, val coalesced: Int) {
+    var issuedAt = 0L
+    // OSD time just before the seek was sent, and at the latest poll.
+    var startOsdMs: Long? = null
+    var lastOsdMs: Long? = null
+    var hasJumped = false
+  }
+
+  var debounceMs = DEFAULT_DEBOUNCE_MS
+    set(value) {
+      field = maxOf(0L, value)
+    }
+
+  private var pendingTargetMs = 0L
+  private var pendingRequestedAt = 0L
+  private var pendingCount = 0
+  private var landing: Seek? = null
+
+  private val sendRunnable = Runnable { send() }
+  private val pollRunnable = Runnable { poll() }
+
+  fun request(targetMs: Long) {
+    pendingTargetMs = targetMs
+    pendingRequestedAt = SystemClock.elapsedRealtimeNanos()
+    pendingCount++
+    // The seek that is still landing is stale now; stop waiting for it.
+    landing?.let { supersede(it) }
+    handler.removeCallbacks(sendRunnable)
+    handler.postDelayed(sendRunnable, debounceMs)
+  }
+
+  // Drops pending and landing seeks, e.g. when playback stops or the player goes away.
+  fun cancel() {
+    handler.removeCallbacks(sendRunnable)
+    handler.removeCallbacks(pollRunnable)
+    pendingCount = 0
+    landing = null
+  }
+
+  private fun send() {
+    if (pendingCount == 0) return
+    val seek = Seek(pendingTargetMs, pendingRequestedAt, pendingCount - 1)
+    pendingCount = 0
+    val player = playerProvider() ?: return
+    val calendar = Calendar.getInstance().apply { timeInMillis = seek.targetMs }
+    seek.startOsdMs = player.osdTime?.timeInMillis
+    seek.lastOsdMs = seek.startOsdMs
+    // Nothing was on screen, so the first time shown comes from the seek.
+    seek.hasJumped = seek.startOsdMs == null
+    seek.issuedAt = SystemClock.elapsedRealtimeNanos()
+    val sent = try {
+      player.seekPlayback(calendar)
+    } catch (e: Exception) {
+      Log.e("SeekController", "seekPlayback failed: ${e.message}")
+      false
+    }
+    if (!sent) {
+      finish(seek, null, "seek-failed")
+      return
+    }
+    landing = seek
+    handler.postDelayed(pollRunnable, POLL_INTERVAL_MS)
+  }
+
+  private fun poll() {
+    val seek = landing ?: return
+    val osdMs = playerProvider()?.osdTime?.timeInMillis
+    val lastOsdMs = seek.lastOsdMs
+    // The stream restarting blanks the clock; otherwise look for a step that plain playback
+    // between two polls cannot explain.
+    if (osdMs == null || (lastOsdMs != null && (osdMs < lastOsdMs || osdMs - lastOsdMs > JUMP_MS))) {
+      seek.hasJumped = true
+    }
+    if (osdMs != null) seek.lastOsdMs = osdMs
+    val elapsedMs = (SystemClock.elapsedRealtimeNanos() - seek.issuedAt) / 1_000_000
+    // A seek shorter than a jump is only told apart by the clock moving onto the target.
+    val isNearTarget = osdMs != null && osdMs != seek.startOsdMs && Math.abs(osdMs - seek.targetMs) <= LANDING_TOLERANCE_MS
+    when {
+      osdMs != null && (seek.hasJumped || isNearTarget) -> finish(seek, osdMs, null)
+      elapsedMs >= LANDING_TIMEOUT_MS -> finish(seek, osdMs, "seek-timeout")
+      else -> handler.postDelayed(pollRunnable, POLL_INTERVAL_MS)
+    }
+  }
+
+  private fun supersede(seek: Seek) {
+    handler.removeCallbacks(pollRunnable)
+    landing = null
+    if (EzvizMetrics.isEnabled) {
+      EzvizMetrics.operation("player.seekPlayback").recordError("superseded", SystemClock.elapsedRealtimeNanos() - seek.requestedAt)
+    }
+  }
+
+  private fun finish(seek: Seek, landedMs: Long?, errorCode: String?) {
+    landing = null
+    val latency = SystemClock.elapsedRealtimeNanos() - seek.requestedAt
+    if (EzvizMetrics.isEnabled) {
+      val operation = EzvizMetrics.operation("player.seekPlayback")
+      if (errorCode == null) operation.recordSuccess(latency) else operation.recordError(errorCode, latency)
+    }
+    report(mapOf(
+      "targetTime" to seek.targetMs.toDouble(),
+      "landedTime" to landedMs?.toDouble(),
+      "latencyMs" to latency / 1_000_000.0,
+      "coalesced" to seek.coalesced,
+      "error" to errorCode
+    ))
+  }
+
+  companion object {
+    const val DEFAULT_DEBOUNCE_MS = 150L
+    private const val POLL_INTERVAL_MS = 100L
+    // The OSD clock has one-second resolution, so one poll can legitimately advance it by 1 s.
+    private const val JUMP_MS = 2_000L
+    private const val LANDING_TOLERANCE_MS = 1_000L
+    private const val LANDING_TIMEOUT_MS = 10_000L
+  }
+}
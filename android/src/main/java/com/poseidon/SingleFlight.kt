@@ -0,0 +1,36 @@
+package com.poseidon
+
+/**
+ * Coalesces identical in-flight requests. The first caller for a key starts the work; callers
+ * that arrive before it finishes are parked and receive the same result, so several mounted
+ * components asking for the same device only cost one SDK call.
+ */
+class SingleFlight {
+
+  private val lock = Any()
+  private val waiters = HashMap<String, MutableList<(Result<Any?>) -> Unit>>()
+
+  fun <T> execute(key: String, onResult: (Result<T>) -> Unit, start: (complete: (Result<T>) -> Unit) -> Unit) {
+    @Suppress("UNCHECKED_CAST")
+    val waiter = onResult as (Result<Any?>) -> Unit
+    synchronized(lock) {
+      val pending = waiters[key]
+      if (pending != null) {
+        pending.add(waiter)
+        return
+      }
+      waiters[key] = mutableListOf(waiter)
+    }
+
+    val complete: (Result<T>) -> Unit = { result ->
+      val callbacks = synchronized(lock) { waiters.remove(key) }.orEmpty()
+      callbacks.forEach { it(result) }
+    }
+    try {
+      start(complete)
+    } catch (e: Exception) {
+      // E.g. the executor rejected the work; without this the key would park every later caller.
+      complete(Result.failure(e))
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package com.poseidon
+
+import android.graphics.Bitmap
+import android.graphics.BitmapFactory
+import android.util.Log
+import android.util.LruCache
+import java.io.File
+import java.util.IdentityHashMap
+
+/**
+ * Latest downsampled frame per (deviceSerial, cameraNo), kept in a byte-bounded memory LRU and
+ * mirrored to one small JPEG per camera under the cache directory, so a view can show the last
+ * frame as a poster the moment it mounts and a thumbnail wall can read files instead of streams.
+ *
+ * Captures are decoded straight to thumbnail size with inSampleSize, reusing the pixel memory of
+ * evicted thumbnails through inBitmap. A thumbnail a view is displaying is pinned by [acquire] or
+ * [load], in the same step as the lookup, and only becomes reusable after [release], so its pixels
+ * are never overwritten on screen.
+ */
+object SnapshotCache {
+
+  class Snapshot(val bitmap: Bitmap, val file: File, val capturedAt: Long)
+
+  private const val DIRECTORY = "ezviz-snapshots"
+  private const val JPEG_QUALITY = 80
+  private const val MAX_REUSABLE_BITMAPS = 4
+
+  @Volatile
+  var maxWidth = 480
+
+  @Volatile
+  var maxHeight = 480
+
+  private val lock = Any()
+  private val pinned = IdentityHashMap<Bitmap, Int>()
+  private val reusable = ArrayList<Bitmap>()
+
+  private var memory = createMemory(8 * 1024 * 1024)
+
+  fun setMaxMemoryBytes(bytes: Int) {
+    synchronized(lock) {
+      val old = memory
+      memory = createMemory(maxOf(1, bytes))
+      old.evictAll()
+    }
+  }
+
+  fun directory(cacheDir: File): File = File(cacheDir, DIRECTORY)
+
+  fun fileFor(cacheDir: File, key: PlayerPool.Key): File {
+    return File(directory(cacheDir), "${sanitize(key.deviceSerial)}_${key.cameraNo}.jpg")
+  }
+
+  fun get(key: PlayerPool.Key): Snapshot? = memory.get(key)
+
+  // Decodes a full-size capture to thumbnail size, writes it to disk and caches it. The capture
+  // file is left for the caller to delete. Blocking; call from a worker thread.
+  fun store(cacheDir: File, key: PlayerPool.Key, capture: File): Snapshot? {
+    val bitmap = decodeScaled(capture) ?: return null
+    val file = fileFor(cacheDir, key)
+    val temp = File(file.parentFile, "${file.name}.tmp")
+    try {
+      file.parentFile?.mkdirs()
+      temp.outputStream().use { bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, it) }
+      if (!temp.renameTo(file)) {
+        temp.delete()
+      }
+    } catch (e: Exception) {
+      Log.w("SnapshotCache", "Failed to persist snapshot for $key: ${e.message}")
+      temp.delete()
+    }
+    val snapshot = Snapshot(bitmap, file, System.currentTimeMillis())
+    memory.put(key, snapshot)
+    return snapshot
+  }
+
+  // Looks up and pins the cached thumbnail, so a concurrent store cannot hand its pixels to the
+  // next decode in between. Pair with release().
+  fun acquire(key: PlayerPool.Key): Snapshot? {
+    synchronized(lock) {
+      return memory.get(key)?.also { pin(it.bitmap) }
+    }
+  }
+
+  // Memory first, then the last frame persisted by an earlier session, pinned like acquire().
+  // Blocking on a miss.
+  fun load(cacheDir: File, key: PlayerPool.Key): Snapshot? {
+    acquire(key)?.let { return it }
+    val file = fileFor(cacheDir, key)
+    if (!file.exists()) return null
+    val bitmap = decodeScaled(file) ?: return null
+    val snapshot = Snapshot(bitmap, file, file.lastModified())
+    synchronized(lock) {
+      pin(bitmap)
+      memory.put(key, snapshot)
+    }
+    return snapshot
+  }
+
+  fun release(bitmap: Bitmap) {
+    synchronized(lock) {
+      val count = (pinned[bitmap] ?: return) - 1
+      if (count > 0) {
+        pinned[bitmap] = count
+        return
+      }
+      pinned.remove(bitmap)
+      if (memory.snapshot().values.none { it.bitmap === bitmap }) {
+        recycleForReuse(bitmap)
+      }
+    }
+  }
+
+  fun clear(cacheDir: File, deviceSerial: String?) {
+    synchronized(lock) {
+      memory.snapshot().keys
+        .filter { deviceSerial == null || it.deviceSerial == deviceSerial }
+        .forEach { memory.remove(it) }
+    }
+    directory(cacheDir).listFiles()
+      ?.filter { deviceSerial == null || it.name.startsWith("${sanitize(deviceSerial)}_") }
+      ?.forEach { it.delete() }
+  }
+
+  private fun createMemory(maxBytes: Int): LruCache<PlayerPool.Key, Snapshot> {
+    return object : LruCache<PlayerPool.Key, Snapshot>(maxBytes) {
+      override fun sizeOf(key: PlayerPool.Key, value: Snapshot): Int = value.bitmap.allocationByteCount
+
+      override fun entryRemoved(evicted: Boolean, key: PlayerPool.Key, oldValue: Snapshot, newValue: Snapshot?) {
+        synchronized(lock) {
+          if (oldValue.bitmap !in pinned) {
+            recycleForReuse(oldValue.bitmap)
+          }
+        }
+      }
+    }
+  }
+
+  private fun pin(bitmap: Bitmap) {
+    pinned[bitmap] = (pinned[bitmap] ?: 0) + 1
+  }
+
+  // Serials come from JS; keep them from adding path separators to the file name.
+  private fun sanitize(value: String): String = value.replace(Regex("[^A-Za-z0-9]"), "-")
+
+  private fun recycleForReuse(bitmap: Bitmap) {
+    if (!bitmap.isMutable || bitmap.isRecycled) return
+    if (reusable.size >= MAX_REUSABLE_BITMAPS) {
+      reusable.removeAt(0)
+    }
+    reusable.add(bitmap)
+  }
+
+  private fun decodeScaled(file: File): Bitmap? {
+    val bounds = BitmapFactory.Options().apply { inJustDecodeBounds = true }
+    BitmapFactory.decodeFile(file.absolutePath, bounds)
+    if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null
+
+    var sampleSize = 1
+    while (bounds.outWidth / (sampleSize * 2) >= maxWidth && bounds.outHeight / (sampleSize * 2) >= maxHeight) {
+      sampleSize *= 2
+    }
+    val options = BitmapFactory.Options().apply {
+      inSampleSize = sampleSize
+      inMutable = true
+      inBitmap = takeReusable(bounds.outWidth / sampleSize, bounds.outHeight / sampleSize)
+    }
+    return try {
+      BitmapFactory.decodeFile(file.absolutePath, options)
+    } catch (e: IllegalArgumentException) {
+      // The candidate did not fit after all; decode into fresh memory.
+      options.inBitmap = null
+      BitmapFactory.decodeFile(file.absolutePath, options)
+    }
+  }
+
+  private fun takeReusable(width: Int, height: Int): Bitmap? {
+    // Worst case for the decoder's ARGB_8888 output; the sampled size can round up by a pixel.
+    val bytesNeeded = (width + 1) * (height + 1) * 4
+    synchronized(lock) {
+      val index = reusable.indexOfFirst { it.allocationByteCount >= bytesNeeded }
+      return if (index >= 0) reusable.removeAt(index) else null
+    }
+  }
+}
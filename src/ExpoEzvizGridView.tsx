@@ -0,0 +1,10 @@
+import { requireNativeViewManager } from "expo-modules-core";
+
+import { ExpoEzvizGridViewProps } from "./ExpoEzvizTypes";
+
+const ExpoEzvizNativeGridView = requireNativeViewManager("ExpoEzviz", "ExpoEzvizGridView");
+
+// Android only. Renders several live streams in one native view, streaming only the tiles that are on screen.
+export default function ExpoEzvizGridView(props: ExpoEzvizGridViewProps) {
+  return <ExpoEzvizNativeGridView {...props} />;
+}
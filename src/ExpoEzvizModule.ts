@@ -1,6 +1,6 @@
 import { NativeModule, requireNativeModule } from "expo";
 
-import { DeviceRecordFile, ExpoEzvizModuleEvents } from "./ExpoEzvizTypes";
+import { DeviceRecordFile, DownloadStage, ExpoEzvizModuleEvents, PackedDeviceRecordFiles } from "./ExpoEzvizTypes";
 
 // Define interfaces for common nested objects if they exist in EZDeviceInfo
 export interface CameraInfo {
@@ -37,9 +37,92 @@ export interface DeviceInfo {
   [key: string]: any; // Allows for any other dynamically discovered properties
 }
 
+export interface DeviceInfoResult {
+  deviceSerial: string;
+  deviceInfo?: DeviceInfo;
+  errorCode?: string; // e.g. "get-device-info-error" or "request-cancelled"
+  error?: string;
+}
+
+export type DeviceInfoEvent = {
+  index: number; // Position of the serial in the getDeviceInfos() input
+  result: DeviceInfoResult;
+};
+
+export interface BackgroundDownload {
+  jobId: string;
+  deviceSerial: string;
+  cameraNo: number;
+  startTime: number;
+  stopTime: number;
+  segments: number;
+  // "interrupted": the app process died mid-download; resumeBackgroundDownloads() restarts it
+  status: "active" | "interrupted" | "succeeded" | "failed";
+  stage?: DownloadStage | null;
+  progress?: number | null;
+  bytesWritten?: number | null;
+  path?: string | null;
+  savedToAlbum?: boolean;
+  code?: string | null;
+  error?: string | null;
+  // Set when the MP4 was copied into the gallery
+  bytes?: number | null;
+  publishMs?: number | null;
+  throughputMBps?: number | null;
+}
+
+export type BackgroundDownloadProgressEvent = {
+  jobId: string;
+  stage: DownloadStage;
+  progress: number;
+  bytesWritten: number;
+};
+
+// Delivered once per job; outcomes that finished while nothing was listening arrive on subscribe.
+export type BackgroundDownloadCompleteEvent = BackgroundDownload;
+
+export type ConversionProgressEvent = {
+  sources: string[]; // The paths passed to convertPsToMp4()
+  progress: number; // Mean progress of the batch, 0.0 to 1.0
+};
+
+export interface ConversionResult {
+  source: string;
+  path: string | null; // The MP4, next to the source; null on failure
+  // "conversion-error", "conversion-cancelled" or "conversion-queue-full" on failure
+  code: string | null;
+}
+
+export interface SnapshotInfo {
+  path: string; // Downsampled JPEG of the camera's last captured frame
+  capturedAt: number; // Epoch milliseconds
+}
+
+export interface LatencyMetrics {
+  count: number;
+  meanMs: number;
+  maxMs: number;
+  p50Ms: number; // Percentiles are the upper bound of the histogram bucket they fall in
+  p95Ms: number;
+  p99Ms: number;
+}
+
+export interface OperationMetrics extends LatencyMetrics {
+  calls: number;
+  errorCount: number;
+  errors: Record<string, number>; // Error code -> count
+}
+
+export interface Metrics {
+  operations: Record<string, OperationMetrics>; // Module functions, plus "player.*" view operations
+  queueWait: Record<string, LatencyMetrics>; // SDK queue wait, keyed by priority ("user", "background")
+}
+
 declare class ExpoEzvizModule extends NativeModule<ExpoEzvizModuleEvents> {
   initSDK(appKey: string, apiUrl?: string): void;
   setAccessToken(accessToken: string): void;
+  setMaxConcurrentRequests(maxConcurrentRequests: number): Promise<void>;
+  cancelPendingRequests(backgroundOnly?: boolean): Promise<number>;
   capturePicture(viewTag: number): void;
   searchRecordFileFromDevice(
     deviceSerial: string,
@@ -47,6 +130,13 @@ declare class ExpoEzvizModule extends NativeModule<ExpoEzvizModuleEvents> {
     beginTime: string,
     endTime: string
   ): Promise<DeviceRecordFile[]>;
+  searchRecordFileFromDevicePacked(
+    deviceSerial: string,
+    cameraNo: number,
+    beginTime: string,
+    endTime: string
+  ): Promise<PackedDeviceRecordFiles>;
+  clearRecordIndexCache(deviceSerial?: string): Promise<void>;
   startPlaybackFromDevice(
     viewTag: number,
     recordFile: DeviceRecordFile
@@ -59,6 +149,32 @@ declare class ExpoEzvizModule extends NativeModule<ExpoEzvizModuleEvents> {
   setDeviceEncryptStatus(deviceSerial: string, verifyCode: string, encryptStatus: boolean): Promise<void>;
   setDefence(deviceSerial: string, defenceType: number): Promise<void>;
   getDeviceInfo(deviceSerial: string): Promise<DeviceInfo>;
+  getDeviceInfos(deviceSerials: string[]): Promise<DeviceInfoResult[]>;
+  setDeviceInfoCacheTtl(ttlMillis: number): Promise<void>;
+  configurePlayerPool(maxParkedPlayers: number, maxLiveStreams: number): Promise<void>;
+  clearPlayerPool(): Promise<void>;
+  setMaxConcurrentDownloads(maxConcurrentDownloads: number, maxStreamsPerDevice?: number): Promise<void>;
+  startBackgroundDownload(
+    deviceSerial: string,
+    cameraNo: number,
+    verifyCode: string,
+    recordFile: DeviceRecordFile,
+    saveToGallery?: boolean,
+    segments?: number
+  ): Promise<string>;
+  cancelBackgroundDownload(jobId: string): Promise<boolean>;
+  getBackgroundDownloads(): Promise<BackgroundDownload[]>;
+  resumeBackgroundDownloads(): Promise<number>;
+  convertPsToMp4(paths: string[], verifyCode?: string): Promise<ConversionResult[]>;
+  cancelConversion(path: string): Promise<boolean>;
+  setMaxConcurrentConversions(maxConcurrentConversions: number): Promise<void>;
+  configureSnapshotCache(maxWidth: number, maxHeight: number, maxMemoryBytes: number): Promise<void>;
+  getLastSnapshot(deviceSerial: string, cameraNo: number): Promise<SnapshotInfo | null>;
+  clearSnapshotCache(deviceSerial?: string): Promise<void>;
+  getMetrics(): Promise<Metrics>;
+  resetMetrics(): Promise<void>;
+  setMetricsEnabled(enabled: boolean): Promise<void>;
+  invalidateDeviceInfoCache(deviceSerial?: string): Promise<void>;
 }
 
 // This call loads the native module object from the JSI.
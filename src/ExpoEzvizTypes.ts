@@ -1,33 +1,61 @@
 import type { StyleProp, ViewStyle } from 'react-native';
 
+import type {
+  BackgroundDownloadCompleteEvent,
+  BackgroundDownloadProgressEvent,
+  ConversionProgressEvent,
+  DeviceInfoEvent,
+} from './ExpoEzvizModule';
+
 export type PictureCapturedEvent = {
   nativeEvent: {
     success: boolean;
     error?: string;
+    uri?: string; // Android: MediaStore URI of the saved image
+    path?: string; // Android: JPEG file path when saveToGallery is false
   };
 };
 
+export type CaptureOptions = {
+  saveToGallery?: boolean; // Defaults to true. When false the JPEG stays in the cache directory and its path is returned
+  streamId?: number; // Dual-lens devices: 0 wide-angle lens, 1 PTZ lens
+};
+
 export type PlayFailedEvent = {
   nativeEvent: {
     error: string;
   };
 };
 
+export type DownloadStage = "downloading" | "converting" | "saving";
+
 export type DownloadProgressEvent = {
   nativeEvent: {
-    progress: number;
+    progress: number; // 0.0 - 1.0 within the current stage
+    jobId?: string; // Android
+    stage?: DownloadStage; // Android
+    bytesWritten?: number; // Android: size of the downloaded stream so far
   };
 };
 
 export type DownloadSuccessEvent = {
   nativeEvent: {
     path: string;
+    savedToAlbum?: boolean;
+    jobId?: string; // Android
+    // Android, when savedToAlbum: cost of copying the MP4 into the gallery
+    bytes?: number;
+    publishMs?: number;
+    throughputMBps?: number;
   };
 };
 
 export type DownloadErrorEvent = {
   nativeEvent: {
     error: string;
+    jobId?: string; // Android
+    code?: string; // Android: e.g. "download-error", "conversion-error", "download-cancelled"
+    path?: string | null;
   };
 };
 
@@ -37,6 +65,71 @@ export type PlaybackProgressEvent = {
   };
 };
 
+// Offsets are milliseconds from the start of the trace (player creation for the first stream on a
+// player, otherwise the stream start call) and are null when that step did not happen.
+export type PerformanceEvent = {
+  nativeEvent: {
+    mode: "live" | "playback";
+    playerReused: boolean;
+    playerCreatedMs: number | null;
+    surfaceBoundMs: number | null;
+    streamStartedMs: number | null;
+    firstFrameMs: number | null;
+    playSuccessMs: number | null;
+    timeToFirstFrameMs: number | null;
+    streamFetchType: number; // Raw EZPlayer.getStreamFetchType() value (P2P / relay / direct)
+    error: string | null;
+  };
+};
+
+export type SuspendStateChangeEvent = {
+  nativeEvent: {
+    suspended: boolean;
+    mode: "stop";
+  };
+};
+
+export type VideoLevelChangeEvent = {
+  nativeEvent: {
+    level: number; // 0 fluent, 1 balanced, 2 HD
+    reason: "improve" | "reduce";
+  };
+};
+
+export type DecoderSelectedEvent = {
+  nativeEvent: {
+    decoder: "hardware" | "software";
+    mode: "auto" | "hardware" | "software";
+    fallback: boolean; // true when a hardware decoded start failed and was retried in software
+  };
+};
+
+export type SnapshotEvent = {
+  nativeEvent: {
+    path: string;
+    width: number;
+    height: number;
+    capturedAt: number; // Epoch milliseconds
+  };
+};
+
+export type PlayerEventsEvent = {
+  nativeEvent: {
+    messages: { messageCode: number; count: number }[]; // Repeats within a batch are collapsed
+    currentTime: number | null; // Latest playback time in the batch, if it moved
+  };
+};
+
+export type SeekCompleteEvent = {
+  nativeEvent: {
+    targetTime: number; // The seek that was sent, in milliseconds
+    landedTime: number | null; // Playback OSD time once the seek took effect; may differ from targetTime
+    latencyMs: number; // From the seekPlayback() call to landing
+    coalesced: number; // Earlier requests dropped in favour of this one
+    error: "seek-failed" | "seek-timeout" | null;
+  };
+};
+
 export type DeviceRecordFile = {
   startTime: number;
   stopTime: number;
@@ -45,6 +138,12 @@ export type DeviceRecordFile = {
   downloadUrl: string;
 };
 
+// Columnar search result: startTimes[i] and stopTimes[i] describe the same segment.
+export type PackedDeviceRecordFiles = {
+  startTimes: number[]; // UTC timestamps in milliseconds
+  stopTimes: number[]; // UTC timestamps in milliseconds
+};
+
 export type ExpoEzvizModuleEvents = {
   onLoad: () => void;
   onPlayFailed: (event: PlayFailedEvent) => void;
@@ -53,6 +152,17 @@ export type ExpoEzvizModuleEvents = {
   onDownloadSuccess: (event: DownloadSuccessEvent) => void;
   onDownloadError: (event: DownloadErrorEvent) => void;
   onPlaybackProgress: (event: PlaybackProgressEvent) => void;
+  onPerformance: (event: PerformanceEvent) => void;
+  onSuspendStateChange: (event: SuspendStateChangeEvent) => void;
+  onVideoLevelChange: (event: VideoLevelChangeEvent) => void;
+  onDecoderSelected: (event: DecoderSelectedEvent) => void;
+  onSnapshot: (event: SnapshotEvent) => void;
+  onPlayerEvents: (event: PlayerEventsEvent) => void;
+  onSeekComplete: (event: SeekCompleteEvent) => void;
+  onDeviceInfo: (event: DeviceInfoEvent) => void;
+  onBackgroundDownloadProgress: (event: BackgroundDownloadProgressEvent) => void;
+  onBackgroundDownloadComplete: (event: BackgroundDownloadCompleteEvent) => void;
+  onConversionProgress: (event: ConversionProgressEvent) => void;
 };
 
 export type ExpoEzvizViewProps = {
@@ -62,6 +172,18 @@ export type ExpoEzvizViewProps = {
   cameraNo: number,
   defaultSoundOn?: boolean;
   autoplay?: boolean;
+  keepStreamAliveMs?: number; // Android: keep the live stream running this long after unmount for fast re-entry
+  videoQuality?: "performance" | "quality"; // Android: start live streams at the lowest or highest resolution
+  adaptiveVideoLevel?: boolean; // Android: step the video level up and down with network conditions
+  decodeMode?: "auto" | "hardware" | "software"; // Android: video decoder; "auto" falls back to software on failure
+  playbackProgressIntervalMs?: number; // Android: onPlaybackProgress polling interval in ms (default 1000, 0 disables)
+  playbackProgressOnChangeOnly?: boolean; // Android: skip progress events when the time has not moved (default true)
+  showPoster?: boolean; // Android: show the camera's last cached frame until the stream renders
+  snapshotIntervalMs?: number; // Android: refresh the cached snapshot this often while streaming; 0 disables
+  suspendWhenHidden?: "off" | "stop"; // Android: what to do with the stream while off screen or backgrounded
+  playerMessageCodes?: number[]; // Android: only these message codes reach JS; all when unset
+  eventBatchIntervalMs?: number; // Android: batch messages and progress into onPlayerEvents every this many ms; 0 disables
+  seekDebounceMs?: number; // Android: ms seekPlayback() waits for a newer target; only the last is sent (default 150)
   onLoad?: () => void;
   onPictureCaptured?: (event: PictureCapturedEvent) => void;
   onPlayFailed?: (event: PlayFailedEvent) => void;
@@ -70,5 +192,38 @@ export type ExpoEzvizViewProps = {
   onDownloadSuccess?: (event: DownloadSuccessEvent) => void;
   onDownloadError?: (event: DownloadErrorEvent) => void;
   onPlaybackProgress?: (event: PlaybackProgressEvent) => void;
+  onPerformance?: (event: PerformanceEvent) => void;
+  onSuspendStateChange?: (event: SuspendStateChangeEvent) => void;
+  onVideoLevelChange?: (event: VideoLevelChangeEvent) => void;
+  onDecoderSelected?: (event: DecoderSelectedEvent) => void;
+  onSnapshot?: (event: SnapshotEvent) => void;
+  onPlayerEvents?: (event: PlayerEventsEvent) => void;
+  onSeekComplete?: (event: SeekCompleteEvent) => void;
+  style?: StyleProp<ViewStyle>;
+};
+
+export type GridCamera = {
+  deviceSerial: string;
+  cameraNo: number;
+  verifyCode?: string;
+};
+
+export type TileStateChangeEvent = {
+  nativeEvent: {
+    index: number;
+    deviceSerial: string;
+    cameraNo: number;
+    state: "stopped" | "loading" | "playing" | "failed";
+    lowQuality: boolean;
+    error: string | null;
+  };
+};
+
+export type ExpoEzvizGridViewProps = {
+  cameras: GridCamera[];
+  columns?: number; // Defaults to ceil(sqrt(cameras.length))
+  maxActiveStreams?: number; // Decode budget: at most this many tiles stream at once. Defaults to 9
+  highQualityMinWidth?: number; // Tiles narrower than this (dp) start at the lowest quality. Defaults to 480
+  onTileStateChange?: (event: TileStateChangeEvent) => void;
   style?: StyleProp<ViewStyle>;
 };
@@ -1,18 +1,19 @@
 import { requireNativeViewManager } from "expo-modules-core";
 import { forwardRef, useImperativeHandle, useRef } from "react";
 
-import { DeviceRecordFile, ExpoEzvizViewProps } from "./ExpoEzvizTypes";
+import { CaptureOptions, DeviceRecordFile, ExpoEzvizViewProps } from "./ExpoEzvizTypes";
 
 const ExpoEzvizNativeView = requireNativeViewManager("ExpoEzviz", "ExpoEzvizView");
 
 // This interface now represents the unified API exposed on the view's ref for BOTH platforms.
 interface NativeViewHandle {
-  capturePicture: () => void;
+  capturePicture: (options?: CaptureOptions) => void;
   startPlayback: (recordFile: DeviceRecordFile) => Promise<boolean>;
   stopPlayback: () => Promise<boolean>;
   startLocalRecord: (path: string) => Promise<boolean>;
   stopLocalRecord: () => void;
-  downloadRecordFile: (recordFile: DeviceRecordFile) => void;
+  downloadRecordFile: (recordFile: DeviceRecordFile, segments?: number) => Promise<string | null | undefined>;
+  cancelDownload: (jobId: string) => Promise<boolean>;
   pausePlayback: () => Promise<boolean>;
   resumePlayback: () => Promise<boolean>;
   seekPlayback: (offsetTimestamp: number) => Promise<boolean>;
@@ -20,10 +21,11 @@ interface NativeViewHandle {
   stopRealPlay: () => void;
   openSound: () => Promise<boolean>;
   closeSound: () => Promise<boolean>;
+  captureSnapshot: () => Promise<void>;
 }
 
 export interface ExpoEzvizViewHandle {
-  capturePicture: () => void;
+  capturePicture: (options?: CaptureOptions) => void;
   startPlayback: (recordFile: DeviceRecordFile) => Promise<boolean>;
   stopPlayback: () => Promise<Boolean>;
   startLocalRecord: (path: string) => Promise<boolean>;
@@ -31,11 +33,14 @@ export interface ExpoEzvizViewHandle {
   pausePlayback: () => Promise<boolean>;
   resumePlayback: () => Promise<boolean>;
   seekPlayback: (offsetTimestamp: number) => Promise<boolean>;
-  downloadRecordFile: (recordFile: DeviceRecordFile) => void;
+  // Resolves with the job id on Android. segments (Android) splits the range into parallel streams
+  downloadRecordFile: (recordFile: DeviceRecordFile, segments?: number) => Promise<string | null | undefined>;
+  cancelDownload: (jobId: string) => Promise<boolean>; // Android only
   startRealPlay: () => void;
   stopRealPlay: () => void;
   openSound: () => Promise<boolean>;
   closeSound: () => Promise<boolean>;
+  captureSnapshot: () => Promise<void>; // Android only
 }
 
 const ExpoEzvizView = forwardRef<ExpoEzvizViewHandle, ExpoEzvizViewProps>(
@@ -45,19 +50,26 @@ const ExpoEzvizView = forwardRef<ExpoEzvizViewHandle, ExpoEzvizViewProps>(
 
     // useImperativeHandle simply exposes the methods from the native ref.
     useImperativeHandle(ref, () => ({
-      capturePicture: () => nativeViewRef.current?.capturePicture(),
+      // Options are Android only; iOS rejects calls with extra arguments.
+      capturePicture: (options) =>
+        options ? nativeViewRef.current?.capturePicture(options) : nativeViewRef.current?.capturePicture(),
       startPlayback: (recordFile) => nativeViewRef.current?.startPlayback(recordFile) ?? Promise.resolve(false),
       stopPlayback: () => nativeViewRef.current?.stopPlayback() ?? Promise.resolve(false),
       openSound: () => nativeViewRef.current?.openSound() ?? Promise.resolve(false),
       closeSound: () => nativeViewRef.current?.closeSound() ?? Promise.resolve(false),
       startLocalRecord: (path) => nativeViewRef.current?.startLocalRecord(path) ?? Promise.resolve(false),
       stopLocalRecord: () => nativeViewRef.current?.stopLocalRecord(),
-      downloadRecordFile: (recordFile) => nativeViewRef.current?.downloadRecordFile(recordFile),
+      downloadRecordFile: (recordFile, segments) =>
+        (segments
+          ? nativeViewRef.current?.downloadRecordFile(recordFile, segments)
+          : nativeViewRef.current?.downloadRecordFile(recordFile)) ?? Promise.resolve(null),
+      cancelDownload: (jobId) => nativeViewRef.current?.cancelDownload?.(jobId) ?? Promise.resolve(false),
       pausePlayback: () => nativeViewRef.current?.pausePlayback() ?? Promise.resolve(false),
       resumePlayback: () => nativeViewRef.current?.resumePlayback() ?? Promise.resolve(false),
       seekPlayback: (offsetTimestamp) => nativeViewRef.current?.seekPlayback(offsetTimestamp) ?? Promise.resolve(false),
       startRealPlay: () => nativeViewRef.current?.startRealPlay(),
       stopRealPlay: () => nativeViewRef.current?.stopRealPlay(),
+      captureSnapshot: () => nativeViewRef.current?.captureSnapshot?.() ?? Promise.resolve(),
     }));
 
     return <ExpoEzvizNativeView ref={nativeViewRef} {...props} />;
@@ -2,30 +2,57 @@ import { requireNativeModule } from "expo-modules-core";
 
 import
   {
+    CaptureOptions,
+    DecoderSelectedEvent,
     DeviceRecordFile,
     DownloadErrorEvent,
     DownloadProgressEvent,
+    DownloadStage,
     DownloadSuccessEvent,
+    ExpoEzvizGridViewProps,
+    GridCamera,
+    PackedDeviceRecordFiles,
+    PerformanceEvent,
     PictureCapturedEvent,
     PlayFailedEvent,
     PlaybackProgressEvent,
+    PlayerEventsEvent,
+    SeekCompleteEvent,
+    SnapshotEvent,
+    SuspendStateChangeEvent,
+    TileStateChangeEvent,
+    VideoLevelChangeEvent,
   } from "./ExpoEzvizTypes";
 
+import ExpoEzvizGridView from "./ExpoEzvizGridView";
 import ExpoEzvizView, { ExpoEzvizViewHandle } from "./ExpoEzvizView";
 
 const ExpoEzviz = requireNativeModule("ExpoEzviz");
 
-export { ExpoEzvizView };
+export { ExpoEzvizGridView, ExpoEzvizView };
 
   export type {
+    CaptureOptions,
+    DecoderSelectedEvent,
     DeviceRecordFile,
     DownloadErrorEvent,
     DownloadProgressEvent,
+    DownloadStage,
     DownloadSuccessEvent,
+    ExpoEzvizGridViewProps,
     ExpoEzvizViewHandle,
+    GridCamera,
+    PackedDeviceRecordFiles,
+    PerformanceEvent,
     PictureCapturedEvent,
     PlayFailedEvent,
-    PlaybackProgressEvent
+    PlaybackProgressEvent,
+    PlayerEventsEvent,
+    SeekCompleteEvent,
+    SnapshotEvent,
+    SuspendStateChangeEvent,
+    TileStateChangeEvent,
+    VideoLevelChangeEvent
   };
 
 export default ExpoEzviz;